@@ -2,17 +2,23 @@ package ru.yandex.practicum.filmorate.controller.film;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.film.FilmBulkImporter;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
+import static ru.yandex.practicum.filmorate.model.Constants.SIMILAR_MODE_CONTENT;
 import static ru.yandex.practicum.filmorate.model.Constants.SORTS;
 import static ru.yandex.practicum.filmorate.model.Constants.SORT_BY_YEAR;
 
@@ -23,6 +29,7 @@ import static ru.yandex.practicum.filmorate.model.Constants.SORT_BY_YEAR;
 @Validated
 public class FilmController {
     private final FilmService filmService;
+    private final FilmBulkImporter filmBulkImporter;
 
     @PostMapping
     public Film createFilm(@Valid @RequestBody Film film) {
@@ -30,6 +37,14 @@ public class FilmController {
         return filmService.addFilm(film);
     }
 
+    //Тело читается и ответ пишется потоково, без загрузки всего массива в память
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void importFilms(InputStream input, HttpServletResponse response) throws IOException {
+        log.debug("Got request to import films in bulk");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        filmBulkImporter.importItems(input, response.getOutputStream());
+    }
+
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
         log.debug("Got request to update film {}", film);
@@ -113,6 +128,16 @@ public class FilmController {
         return filmService.getFilmsByDirector(directorId, sortBy);
     }
 
+    @GetMapping("/{id}/similar")
+    public List<Film> getSimilarFilms(
+            @PathVariable("id") @Min(1) Long filmId,
+            @RequestParam(value = "mode", defaultValue = SIMILAR_MODE_CONTENT) String mode,
+            @RequestParam(value = "count", defaultValue = "10") @Min(1) int count
+    ) {
+        log.debug("Got request to get {} film(s) similar to film with id {} by {}", count, filmId, mode);
+        return filmService.getSimilarFilms(filmId, mode, count);
+    }
+
     @GetMapping("/search")
     public List<Film> searchFilms(
             @RequestParam(value = "query") @NotBlank String query,
@@ -10,6 +10,7 @@ import ru.yandex.practicum.filmorate.service.filmReview.FilmReviewService;
 import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import java.util.List;
+import java.util.Map;
 
 @Slf4j
 @RestController
@@ -50,13 +51,23 @@ public class FilmReviewController {
         return filmReviewService.getReviewById(reviewId);
     }
 
+    //Страница после курсора (afterUseful, afterReviewId), для следующей страницы передаются поля последнего отзыва
     @GetMapping
     public List<FilmReview> getReviews(
             @RequestParam(value = "filmId", required = false) Long filmId,
+            @RequestParam(value = "afterUseful", required = false) Integer afterUseful,
+            @RequestParam(value = "afterReviewId", required = false) Long afterReviewId,
             @RequestParam(value = "count", defaultValue = "10") @Min(1) int count
     ) {
-        log.debug("Got request to get {} reviews to film with id {}", count, filmId);
-        return filmReviewService.getReviews(filmId, count);
+        log.debug("Got request to get {} reviews to film with id {} after review {} with useful {}",
+                count, filmId, afterReviewId, afterUseful);
+        return filmReviewService.getReviews(filmId, afterUseful, afterReviewId, count);
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Long> getReviewCacheStats() {
+        log.debug("Got request to get review cache stats");
+        return filmReviewService.getCacheStats();
     }
 
     @PutMapping("/{id}/like/{userId}")
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.controller.recommendations;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.recommendations.RecommendationsService;
+import ru.yandex.practicum.filmorate.service.metrics.StageStats;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Slf4j
+@Validated
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/recommendations")
+public class RecommendationsController {
+
+    private final RecommendationsService recommendationsService;
+
+    @GetMapping("/group")
+    public List<Film> getGroupRecommendations(
+            @RequestParam(value = "userIds") @NotEmpty Set<@Min(1) Long> userIds,
+            @RequestParam(value = "limit", defaultValue = "10") @Min(1) int limit
+    ) {
+        log.debug("Got request to get {} group recommendation(s) for users with ids {}", limit, userIds);
+        return recommendationsService.getGroupRecommendations(userIds, limit);
+    }
+
+    @GetMapping("/stages")
+    public Map<String, StageStats> getStageStats() {
+        log.debug("Got request to get recommendations stage timings");
+        return recommendationsService.getStageStats();
+    }
+}
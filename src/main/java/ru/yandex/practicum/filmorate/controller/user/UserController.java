@@ -2,19 +2,36 @@ package ru.yandex.practicum.filmorate.controller.user;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.recommendations.RecommendationsService;
+import ru.yandex.practicum.filmorate.service.metrics.StageStats;
 import ru.yandex.practicum.filmorate.model.feed.Feed;
 import ru.yandex.practicum.filmorate.service.feed.FeedService;
+import ru.yandex.practicum.filmorate.service.user.UserBulkImporter;
 import ru.yandex.practicum.filmorate.service.user.UserService;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import static ru.yandex.practicum.filmorate.model.Constants.DEFAULT_RECOMMENDATIONS_COUNT;
+import static ru.yandex.practicum.filmorate.model.Constants.RECOMMENDATIONS_MODES;
+import static ru.yandex.practicum.filmorate.model.Constants.RECOMMENDATIONS_MODE_LIKES;
+import static ru.yandex.practicum.filmorate.model.Constants.RECOMMENDATIONS_MODE_MODEL;
 
 @Slf4j
 @Validated
@@ -24,6 +41,7 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
+    private final UserBulkImporter userBulkImporter;
     private final FeedService feedService;
     private final RecommendationsService recommendationsService;
 
@@ -33,6 +51,14 @@ public class UserController {
         return userService.addUser(user);
     }
 
+    //Тело читается и ответ пишется потоково, без загрузки всего массива в память
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void importUsers(InputStream input, HttpServletResponse response) throws IOException {
+        log.debug("Got request to import users in bulk");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        userBulkImporter.importItems(input, response.getOutputStream());
+    }
+
     @PutMapping
     public User updateUser(@Valid @RequestBody User user) {
         log.debug("Got request to update user: {}", user);
@@ -78,6 +104,60 @@ public class UserController {
         return userService.getFriendsForUser(userId);
     }
 
+    @PostMapping("/{id}/friends/mutual-counts")
+    public Map<Long, Integer> getMutualFriendsCounts(
+            @PathVariable("id") @Min(1) Long userId,
+            @RequestBody @NotEmpty List<@NotNull @Min(1) Long> otherUserIds
+    ) {
+        log.debug("Got request to count mutual friends of user with id {} with {} user(s)", userId, otherUserIds.size());
+        return userService.getMutualFriendsCounts(userId, otherUserIds);
+    }
+
+    @GetMapping("/common-friends")
+    public List<User> getCommonFriendsOfUsers(
+            @RequestParam("ids") @NotEmpty Set<@Min(1) Long> userIds
+    ) {
+        log.debug("Got request to find common friends of users with ids {}", userIds);
+        return userService.getCommonFriends(userIds);
+    }
+
+    @GetMapping("/{id}/friends/requests")
+    public List<User> getFriendRequests(
+            @PathVariable("id") @Min(1) Long userId,
+            @RequestParam(value = "afterId", defaultValue = "0") @Min(0) Long afterUserId,
+            @RequestParam(value = "limit", defaultValue = "20") @Min(1) int limit
+    ) {
+        log.debug("Got request to get friend requests for user with id {} after id {}", userId, afterUserId);
+        return userService.getFriendRequests(userId, afterUserId, limit);
+    }
+
+    @PostMapping("/{id}/friends/requests/accept")
+    public List<Long> acceptFriendRequests(
+            @PathVariable("id") @Min(1) Long userId,
+            @RequestBody @NotEmpty List<@NotNull @Min(1) Long> requesterIds
+    ) {
+        log.debug("Got request to accept friend requests {} for user with id {}", requesterIds, userId);
+        return userService.acceptFriendRequests(userId, requesterIds);
+    }
+
+    @PostMapping("/{id}/friends/requests/decline")
+    public List<Long> declineFriendRequests(
+            @PathVariable("id") @Min(1) Long userId,
+            @RequestBody @NotEmpty List<@NotNull @Min(1) Long> requesterIds
+    ) {
+        log.debug("Got request to decline friend requests {} for user with id {}", requesterIds, userId);
+        return userService.declineFriendRequests(userId, requesterIds);
+    }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(
+            @PathVariable("id") @Min(1) Long userId,
+            @RequestParam(value = "count", defaultValue = "10") @Min(1) int count
+    ) {
+        log.debug("Got request to get {} friend suggestion(s) for user with id {}", count, userId);
+        return userService.getFriendSuggestions(userId, count);
+    }
+
     @GetMapping("/{id}/friends/common/{otherId}")
     public List<User> getCommonFriends(
             @PathVariable("id") @Min(1) Long userId,
@@ -87,6 +167,15 @@ public class UserController {
         return userService.getCommonFriends(userId, otherUserId);
     }
 
+    @GetMapping("/{id}/path/{otherId}")
+    public List<User> getFriendshipPath(
+            @PathVariable("id") @Min(1) Long userId,
+            @PathVariable("otherId") @Min(1) Long otherUserId
+    ) {
+        log.debug("Got request to find friendship path from user with id {} to user with id {}", userId, otherUserId);
+        return userService.getFriendshipPath(userId, otherUserId);
+    }
+
     @DeleteMapping("/{userId}")
     public void removeUserById(
             @PathVariable("userId") Long userId
@@ -95,16 +184,78 @@ public class UserController {
         userService.removeUserById(userId);
     }
 
+    //Страница ленты до события before (не включая его), для следующей страницы передаётся eventId первого события
     @GetMapping("/{id}/feed")
     public List<Feed> getUserFeed(
+            @PathVariable("id") @Min(1) Long userId,
+            @RequestParam(value = "before", required = false) @Min(1) Long beforeEventId,
+            @RequestParam(value = "limit", defaultValue = "100") @Min(1) @Max(1000) int limit,
+            @RequestParam(value = "eventType", required = false) String eventType
+    ) {
+        log.debug("Got request to get {} feed event(s) before {} for user with id: {}", limit, beforeEventId, userId);
+        return feedService.getFeedListById(userId, beforeEventId, limit, eventType);
+    }
+
+    @GetMapping("/feed/retention/stats")
+    public Map<String, StageStats> getFeedRetentionStats() {
+        log.debug("Got request to get feed retention stats");
+        return feedService.getRetentionStats();
+    }
+
+    @GetMapping("/feed/cache/stats")
+    public Map<String, Long> getFeedCacheStats() {
+        log.debug("Got request to get feed cache stats");
+        return feedService.getCacheStats();
+    }
+
+    //Новые события ленты по мере появления, соединение не занимает поток сервера
+    @GetMapping(value = "/{id}/feed/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamUserFeed(
             @PathVariable("id") @Min(1) Long userId
     ) {
-        log.debug("Got request to get feed list for user with id: {}", userId);
-        return feedService.getFeedListById(userId);
+        log.debug("Got request to stream feed for user with id: {}", userId);
+        return feedService.streamFeed(userId);
+    }
+
+    @GetMapping("/feed/stream/stats")
+    public Map<String, Long> getFeedStreamStats() {
+        log.debug("Got request to get feed stream stats");
+        return feedService.getStreamStats();
+    }
+
+    @GetMapping("/{id}/timeline")
+    public List<Feed> getUserTimeline(
+            @PathVariable("id") @Min(1) Long userId,
+            @RequestParam(value = "limit", defaultValue = "50") @Min(1) @Max(200) int limit
+    ) {
+        log.debug("Got request to get {} timeline event(s) for user with id: {}", limit, userId);
+        return feedService.getTimeline(userId, limit);
+    }
+
+    @GetMapping("/timeline/stats")
+    public Map<String, StageStats> getTimelineStats() {
+        log.debug("Got request to get timeline fan-out stats");
+        return feedService.getTimelineStats();
     }
 
     @GetMapping("/{userId}/recommendations")
-    public List<Film> getRecommendations(@PathVariable(value = "userId") long userId) {
-        return recommendationsService.getRecommendations(userId);
+    public List<Film> getRecommendations(
+            @PathVariable(value = "userId") long userId,
+            @RequestParam(value = "mode", defaultValue = RECOMMENDATIONS_MODE_LIKES) String mode,
+            @RequestParam(value = "count", required = false) @Min(1) Integer count
+    ) {
+        if (!RECOMMENDATIONS_MODES.contains(mode)) {
+            throw new IncorrectParameterException("mode", "Should be likes or model");
+        }
+        log.debug("Got request to get recommendations for user with id {} by {}", userId, mode);
+        if (RECOMMENDATIONS_MODE_MODEL.equals(mode)) {
+            return recommendationsService.getModelRecommendations(userId,
+                    count == null ? DEFAULT_RECOMMENDATIONS_COUNT : count);
+        }
+        //Без count сохраняется прежняя выдача: все фильмы похожих пользователей
+        if (count == null) {
+            return recommendationsService.getRecommendations(userId);
+        }
+        return recommendationsService.getRecommendations(userId, count);
     }
 }
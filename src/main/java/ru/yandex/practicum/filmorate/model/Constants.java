@@ -7,6 +7,11 @@ public class Constants {
     public static final String SORT_BY_YEAR = "year";
     public static final String SEARCH_BY_TITLE = "title";
     public static final String SEARCH_BY_DIRECTOR = "director";
+    public static final String SIMILAR_MODE_CONTENT = "content";
+    public static final String RECOMMENDATIONS_MODE_LIKES = "likes";
+    public static final String RECOMMENDATIONS_MODE_MODEL = "model";
+    public static final int DEFAULT_RECOMMENDATIONS_COUNT = 10;
 
     public static final Set<String> SORTS = Set.of(SORT_BY_LIKES, SORT_BY_YEAR);
+    public static final Set<String> RECOMMENDATIONS_MODES = Set.of(RECOMMENDATIONS_MODE_LIKES, RECOMMENDATIONS_MODE_MODEL);
 }
\ No newline at end of file
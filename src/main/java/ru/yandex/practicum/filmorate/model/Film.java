@@ -7,9 +7,7 @@ import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 
@@ -58,16 +56,4 @@ public class Film {
         this.releaseDate = releaseDate;
         this.duration = duration;
     }
-
-    public Map<String, Object> mapToDb() {
-        Map<String, Object> filmValues = new HashMap<>();
-
-        //Определяем маппинг только для полей, чьи проверки не зависят от БД
-        filmValues.put("film_name", name);
-        filmValues.put("description", description);
-        filmValues.put("release_date", releaseDate);
-        filmValues.put("duration", duration);
-
-        return filmValues;
-    }
 }
@@ -1,6 +1,25 @@
 package ru.yandex.practicum.filmorate.model;
 
+import lombok.Getter;
+
+//Статус хранится в user_friend.confirmation_status в виде кода TINYINT
 public enum FriendConfirmationStatus {
-    CONFIRMED,
-    WAITING_FOR_APPROVAL
+    WAITING_FOR_APPROVAL(0),
+    CONFIRMED(1);
+
+    @Getter
+    private final int code;
+
+    FriendConfirmationStatus(int code) {
+        this.code = code;
+    }
+
+    public static FriendConfirmationStatus fromCode(int code) {
+        for (FriendConfirmationStatus status : values()) {
+            if (status.code == code) {
+                return status;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown friend confirmation status code %d", code));
+    }
 }
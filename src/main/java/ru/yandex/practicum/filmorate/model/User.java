@@ -7,8 +7,6 @@ import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.*;
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.Map;
 
 @Data
 @Builder
@@ -37,14 +35,4 @@ public class User {
         this.name = name;
         this.birthday = birthday;
     }
-
-    public Map<String, Object> mapToDb() {
-        Map<String, Object> userValues = new HashMap<>();
-        userValues.put("user_name", name);
-        userValues.put("login", login);
-        userValues.put("email", email);
-        userValues.put("birthday", birthday);
-
-        return userValues;
-    }
 }
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.model.feed;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+//Шаг уплотнения ленты: сколько REMOVE просмотрено, eventId последнего из них и удалённые цепочки
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompactionBatch {
+    private int scanned;
+    private long lastEventId;
+    private List<Feed> removedEvents;
+}
@@ -7,8 +7,6 @@ import lombok.NoArgsConstructor;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.PositiveOrZero;
-import java.util.HashMap;
-import java.util.Map;
 
 
 @Data
@@ -27,14 +25,4 @@ public class Feed {
     private Long eventId;
     @PositiveOrZero
     private Long entityId;
-
-    public Map<String, Object> mapToDb() {
-        Map<String, Object> feedValues = new HashMap<>();
-        feedValues.put("timestamp", timestamp);
-        feedValues.put("userId", userId);
-        feedValues.put("eventType", eventType.toString());
-        feedValues.put("Operation", operation.toString());
-        feedValues.put("entityId", entityId);
-        return feedValues;
-    }
 }
@@ -1,11 +1,24 @@
 package ru.yandex.practicum.filmorate.repository.feed;
 
+import ru.yandex.practicum.filmorate.model.feed.CompactionBatch;
+import ru.yandex.practicum.filmorate.model.feed.EventType;
 import ru.yandex.practicum.filmorate.model.feed.Feed;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface FeedStorage {
     void addEvent(Feed feed);
 
-    List<Feed> getUserFeed(Long userId);
+    List<Feed> moveOutboxToFeed(int limit);
+
+    boolean hasOutboxEvents(Long userId);
+
+    List<Feed> getUserFeed(Long userId, Long beforeEventId, int limit, EventType eventType);
+
+    List<Feed> getLatestEvents(Collection<Long> userIds, int limit);
+
+    CompactionBatch compactCancelledEvents(long afterEventId, long olderThan, int limit);
+
+    List<Feed> archiveEvents(long olderThan, int limit);
 }
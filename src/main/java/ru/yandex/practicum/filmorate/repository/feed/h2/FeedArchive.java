@@ -0,0 +1,225 @@
+package ru.yandex.practicum.filmorate.repository.feed.h2;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.feed.EventType;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/*
+Холодный архив ленты: сжатые файлы по месяцам (feed-yyyy-MM.jsonl.gz), по событию в строке.
+Каждая запись дописывается в файл отдельным gzip-членом, такие файлы читаются GZIPInputStream целиком.
+Событие может попасть в архив дважды, если процесс упал до удаления строк из FEED, поэтому при чтении дубли
+по eventId отбрасываются. Рядом с каждым файлом лежит индекс (feed-yyyy-MM.idx) со строками "userId eventId":
+самое старое событие пользователя в каждой дописанной пачке. По индексам в памяти держатся битовые карты
+пользователей каждого файла и самое старое архивное событие каждого пользователя, поэтому файлы читаются
+только когда у пользователя действительно есть архивные события старше курсора.
+Дописывание держит блокировку записи, чтение - блокировку чтения: недописанный gzip-член не читается
+ */
+@Slf4j
+@Component
+public class FeedArchive {
+
+    private static final String FILE_PREFIX = "feed-";
+    private static final String FILE_SUFFIX = ".jsonl.gz";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM")
+            .withZone(ZoneOffset.UTC);
+
+    private final Path archivePath;
+    private final ObjectMapper objectMapper;
+    private final Map<Path, BitSet> usersByPartition = new TreeMap<>(
+            Comparator.comparing(Path::getFileName).reversed());
+    private final Map<Long, Long> oldestEventIds = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean indexLoaded;
+
+    public FeedArchive(@Value("${feed.archive.path}") String archivePath, ObjectMapper objectMapper) {
+        this.archivePath = Paths.get(archivePath);
+        this.objectMapper = objectMapper;
+    }
+
+    //Индекс дописывается раньше файла: после сбоя он может указать на лишний файл, но не пропустит нужный
+    public void append(List<Feed> events) {
+        Map<String, List<Feed>> partitions = events.stream()
+                .collect(Collectors.groupingBy(
+                        event -> PARTITION_FORMAT.format(Instant.ofEpochMilli(event.getTimestamp())),
+                        TreeMap::new,
+                        Collectors.toList()));
+        lock.writeLock().lock();
+        try {
+            loadIndex();
+            Files.createDirectories(archivePath);
+            for (Map.Entry<String, List<Feed>> partition : partitions.entrySet()) {
+                Path file = archivePath.resolve(FILE_PREFIX + partition.getKey() + FILE_SUFFIX);
+                Map<Long, Long> oldest = getOldestEventIds(partition.getValue());
+                writeIndex(file, oldest, StandardOpenOption.APPEND);
+                try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)), StandardCharsets.UTF_8)) {
+                    for (Feed event : partition.getValue()) {
+                        writer.write(objectMapper.writeValueAsString(event));
+                        writer.write('\n');
+                    }
+                }
+                addToIndex(file, oldest);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write feed archive", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+    До limit последних архивных событий пользователя старше beforeEventId в хронологическом порядке.
+    Файлы с событиями пользователя читаются от новых к старым, пока страница не наберётся
+     */
+    public List<Feed> getUserFeed(Long userId, Long beforeEventId, int limit, EventType eventType) {
+        if (!indexLoaded) {
+            lock.writeLock().lock();
+            try {
+                loadIndex();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        TreeMap<Long, Feed> page = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            for (Path file : getUserPartitions(userId, beforeEventId)) {
+                readPartition(file, event -> {
+                    if (event.getUserId().equals(userId)
+                            && (beforeEventId == null || event.getEventId() < beforeEventId)
+                            && (eventType == null || event.getEventType() == eventType)) {
+                        page.put(event.getEventId(), event);
+                    }
+                });
+                if (page.size() >= limit) {
+                    break;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        while (page.size() > limit) {
+            page.pollFirstEntry();
+        }
+        return new ArrayList<>(page.values());
+    }
+
+    //Файлы с событиями пользователя от новых к старым; пусто, если архивных событий старше курсора нет
+    private List<Path> getUserPartitions(Long userId, Long beforeEventId) {
+        Long oldestEventId = oldestEventIds.get(userId);
+        if (oldestEventId == null || (beforeEventId != null && oldestEventId >= beforeEventId)) {
+            return List.of();
+        }
+        List<Path> files = new ArrayList<>();
+        usersByPartition.forEach((file, users) -> {
+            if (users.get(userId.intValue())) {
+                files.add(file);
+            }
+        });
+        return files;
+    }
+
+    //Индексы читаются один раз под блокировкой записи; для файла без индекса он строится по самому файлу
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        for (Path file : getPartitions()) {
+            Path index = getIndexPath(file);
+            if (Files.notExists(index)) {
+                Map<Long, Long> oldest = new HashMap<>();
+                readPartition(file, event -> oldest.merge(event.getUserId(), event.getEventId(), Math::min));
+                writeIndex(file, oldest, StandardOpenOption.TRUNCATE_EXISTING);
+                log.info("Feed archive index rebuilt for {}", file.getFileName());
+            }
+            Map<Long, Long> oldest = new HashMap<>();
+            try (Stream<String> lines = Files.lines(index)) {
+                lines.forEach(line -> {
+                    String[] fields = line.split(" ");
+                    oldest.merge(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Math::min);
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read feed archive index " + index, e);
+            }
+            addToIndex(file, oldest);
+        }
+        indexLoaded = true;
+    }
+
+    private void addToIndex(Path file, Map<Long, Long> oldest) {
+        BitSet users = usersByPartition.computeIfAbsent(file, path -> new BitSet());
+        oldest.forEach((userId, eventId) -> {
+            users.set(userId.intValue());
+            oldestEventIds.merge(userId, eventId, Math::min);
+        });
+    }
+
+    private void writeIndex(Path file, Map<Long, Long> oldest, StandardOpenOption mode) {
+        StringBuilder lines = new StringBuilder();
+        oldest.forEach((userId, eventId) -> lines.append(userId).append(' ').append(eventId).append('\n'));
+        try {
+            Files.writeString(getIndexPath(file), lines, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write feed archive index for " + file, e);
+        }
+    }
+
+    private Map<Long, Long> getOldestEventIds(List<Feed> events) {
+        Map<Long, Long> oldest = new HashMap<>();
+        events.forEach(event -> oldest.merge(event.getUserId(), event.getEventId(), Math::min));
+        return oldest;
+    }
+
+    private Path getIndexPath(Path file) {
+        String name = file.getFileName().toString();
+        return file.resolveSibling(name.substring(0, name.length() - FILE_SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    private void readPartition(Path file, Consumer<Feed> consumer) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                consumer.accept(objectMapper.readValue(line, Feed.class));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read feed archive " + file, e);
+        }
+    }
+
+    private List<Path> getPartitions() {
+        if (!Files.isDirectory(archivePath)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(archivePath)) {
+            return files
+                    .filter(file -> file.getFileName().toString().startsWith(FILE_PREFIX)
+                            && file.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list feed archive", e);
+        }
+    }
+}
@@ -4,15 +4,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.namedparam.SqlParameterSource;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.feed.*;
 import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.repository.insert.EntityInserter;
+import ru.yandex.practicum.filmorate.repository.insert.InsertStatements;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
+import java.util.*;
 
 @Component
 @Slf4j
@@ -20,25 +21,226 @@ import java.util.List;
 public class FeedRepository implements FeedStorage {
 
     private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final FeedArchive feedArchive;
+    private final EntityInserter entityInserter;
 
+    //Событие пишется в outbox в транзакции вызывающего, в ленту его переносит FeedOutboxFlusher
     @Override
     public void addEvent(Feed feed) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate.getJdbcTemplate())
-                .withTableName("feed")
-                .usingGeneratedKeyColumns("eventId");
-        simpleJdbcInsert.executeAndReturnKey(feed.mapToDb()).longValue();
+        entityInserter.insert(InsertStatements.FEED_OUTBOX_EVENT, feed);
     }
 
+    /*
+    Переносит до limit старейших событий outbox в ленту одним пакетом и возвращает их с присвоенными eventId.
+    Порядок outbox_id сохраняется, поэтому события каждого пользователя попадают в ленту в порядке записи.
+    Удаление идёт по списку id: событие из транзакции, зафиксированной позже, может иметь меньший outbox_id
+     */
     @Override
-    public List<Feed> getUserFeed(Long userId) {
+    @Transactional
+    public List<Feed> moveOutboxToFeed(int limit) {
+        String selectQuery = "SELECT outbox_id, timestamp, userId, eventType, operation, entityId " +
+                "FROM feed_outbox " +
+                "ORDER BY outbox_id " +
+                "LIMIT :limit";
+        List<Long> outboxIds = new ArrayList<>();
+        List<Feed> events = new ArrayList<>();
+        jdbcTemplate.query(selectQuery, new MapSqlParameterSource("limit", limit), rs -> {
+            outboxIds.add(rs.getLong("outbox_id"));
+            events.add(mapRowToOutboxFeed(rs));
+        });
+        if (events.isEmpty()) {
+            return events;
+        }
+
+        entityInserter.insertAll(InsertStatements.FEED_EVENT, events, Feed::setEventId);
+
+        String deleteQuery = "DELETE FROM feed_outbox WHERE outbox_id IN (:outboxIds)";
+        jdbcTemplate.update(deleteQuery, new MapSqlParameterSource("outboxIds", outboxIds));
+        return events;
+    }
+
+    //Проверка по индексу (userId) без блокировок, чтобы чтение ленты не запускало перенос outbox без нужды
+    @Override
+    public boolean hasOutboxEvents(Long userId) {
+        String sqlQuery = "SELECT EXISTS (SELECT 1 FROM feed_outbox WHERE userId = :userId)";
+        return Boolean.TRUE.equals(
+                jdbcTemplate.queryForObject(sqlQuery, new MapSqlParameterSource("userId", userId), Boolean.class));
+    }
+
+    /*
+    Страница из limit событий пользователя, предшествующих beforeEventId, в хронологическом порядке.
+    Последние события выбираются по индексу (userId, eventId DESC), поэтому чтение не зависит от размера ленты
+     */
+    @Override
+    public List<Feed> getUserFeed(Long userId, Long beforeEventId, int limit, EventType eventType) {
+        MapSqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("limit", limit);
+        StringBuilder conditions = new StringBuilder("WHERE userId = :userId ");
+        if (beforeEventId != null) {
+            conditions.append("AND eventId < :beforeEventId ");
+            namedParams.addValue("beforeEventId", beforeEventId);
+        }
+        if (eventType != null) {
+            conditions.append("AND eventType = :eventType ");
+            namedParams.addValue("eventType", eventType.toString());
+        }
         String sqlQuery = "SELECT timestamp, userId, eventType, operation, eventId, entityId " +
+                "FROM (SELECT timestamp, userId, eventType, operation, eventId, entityId " +
                 "FROM feed " +
-                "WHERE userId = :userId";
-        SqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId);
+                conditions +
+                "ORDER BY eventId DESC " +
+                "LIMIT :limit) AS page " +
+                "ORDER BY eventId";
+        List<Feed> page = jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToFeed);
+        if (page.size() == limit) {
+            return page;
+        }
+
+        //Горячая таблица исчерпана, остаток страницы добирается из архива
+        Long archiveBefore = page.isEmpty() ? beforeEventId : page.get(0).getEventId();
+        List<Feed> archived = feedArchive.getUserFeed(userId, archiveBefore, limit - page.size(), eventType);
+        archived.addAll(page);
+        return archived;
+    }
+
+    //Последние limit событий нескольких пользователей в хронологическом порядке
+    @Override
+    public List<Feed> getLatestEvents(Collection<Long> userIds, int limit) {
+        if (userIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sqlQuery = "SELECT timestamp, userId, eventType, operation, eventId, entityId " +
+                "FROM (SELECT timestamp, userId, eventType, operation, eventId, entityId " +
+                "FROM feed " +
+                "WHERE userId IN (:userIds) " +
+                "ORDER BY eventId DESC " +
+                "LIMIT :limit) AS page " +
+                "ORDER BY eventId";
+        MapSqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("userIds", userIds)
+                .addValue("limit", limit);
         return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToFeed);
     }
 
+    /*
+    Шаг уплотнения: до limit событий REMOVE старше olderThan после afterEventId удаляются вместе с погашенными
+    ими событиями той же сущности (предшествующий ADD и UPDATE между ними). Цепочки читаются по индексу
+    (userId, eventId) только для затронутых сущностей, поэтому шаг - короткая транзакция, а просмотренная
+    часть ленты при следующих шагах не перечитывается
+     */
+    @Override
+    @Transactional
+    public CompactionBatch compactCancelledEvents(long afterEventId, long olderThan, int limit) {
+        String removesQuery = "SELECT timestamp, userId, eventType, operation, eventId, entityId " +
+                "FROM feed " +
+                "WHERE eventId > :afterEventId AND timestamp < :olderThan AND operation = :remove " +
+                "ORDER BY eventId " +
+                "LIMIT :limit";
+        MapSqlParameterSource removesParams = new MapSqlParameterSource()
+                .addValue("afterEventId", afterEventId)
+                .addValue("olderThan", olderThan)
+                .addValue("remove", OperationType.REMOVE.toString())
+                .addValue("limit", limit);
+        List<Feed> removes = jdbcTemplate.query(removesQuery, removesParams, this::mapRowToFeed);
+        if (removes.isEmpty()) {
+            return CompactionBatch.builder()
+                    .lastEventId(afterEventId)
+                    .removedEvents(new ArrayList<>())
+                    .build();
+        }
+
+        long lastEventId = removes.get(removes.size() - 1).getEventId();
+        Set<Long> removeIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        Map<String, Object[]> keys = new HashMap<>();
+        for (Feed remove : removes) {
+            removeIds.add(remove.getEventId());
+            userIds.add(remove.getUserId());
+            keys.put(getChainKey(remove), new Object[]{remove.getUserId(), remove.getEventType().toString(),
+                    remove.getEntityId()});
+        }
+        String chainsQuery = "SELECT timestamp, userId, eventType, operation, eventId, entityId " +
+                "FROM feed " +
+                "WHERE userId IN (:userIds) AND (userId, eventType, entityId) IN (:keys) " +
+                "AND eventId <= :lastEventId " +
+                "ORDER BY userId, eventType, entityId, eventId";
+        MapSqlParameterSource chainsParams = new MapSqlParameterSource()
+                .addValue("userIds", userIds)
+                .addValue("keys", new ArrayList<>(keys.values()))
+                .addValue("lastEventId", lastEventId);
+        List<Feed> cancelled = new ArrayList<>();
+        List<Feed> chain = new ArrayList<>();
+        String[] chainKey = new String[1];
+        jdbcTemplate.query(chainsQuery, chainsParams, rs -> {
+            Feed event = mapRowToFeed(rs, rs.getRow());
+            String key = getChainKey(event);
+            if (!key.equals(chainKey[0])) {
+                chainKey[0] = key;
+                chain.clear();
+            }
+            switch (event.getOperation()) {
+                case ADD:
+                    chain.clear();
+                    chain.add(event);
+                    break;
+                case UPDATE:
+                    if (!chain.isEmpty()) {
+                        chain.add(event);
+                    }
+                    break;
+                case REMOVE:
+                    if (!chain.isEmpty() && removeIds.contains(event.getEventId())) {
+                        chain.add(event);
+                        cancelled.addAll(chain);
+                    }
+                    chain.clear();
+                    break;
+            }
+        });
+
+        String deleteQuery = "DELETE FROM feed WHERE eventId IN (:eventIds)";
+        for (int from = 0; from < cancelled.size(); from += limit) {
+            List<Long> eventIds = new ArrayList<>();
+            cancelled.subList(from, Math.min(from + limit, cancelled.size()))
+                    .forEach(event -> eventIds.add(event.getEventId()));
+            jdbcTemplate.update(deleteQuery, new MapSqlParameterSource("eventIds", eventIds));
+        }
+        return CompactionBatch.builder()
+                .scanned(removes.size())
+                .lastEventId(lastEventId)
+                .removedEvents(cancelled)
+                .build();
+    }
+
+    /*
+    Переносит до limit старейших событий старше olderThan в архив. Файл дописывается до фиксации удаления,
+    поэтому при ошибке записи строки остаются в FEED
+     */
+    @Override
+    @Transactional
+    public List<Feed> archiveEvents(long olderThan, int limit) {
+        String selectQuery = "SELECT timestamp, userId, eventType, operation, eventId, entityId " +
+                "FROM feed " +
+                "WHERE timestamp < :olderThan " +
+                "ORDER BY eventId " +
+                "LIMIT :limit";
+        MapSqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("olderThan", olderThan)
+                .addValue("limit", limit);
+        List<Feed> events = jdbcTemplate.query(selectQuery, namedParams, this::mapRowToFeed);
+        if (events.isEmpty()) {
+            return events;
+        }
+
+        feedArchive.append(events);
+        String deleteQuery = "DELETE FROM feed WHERE eventId IN (:eventIds)";
+        List<Long> eventIds = new ArrayList<>(events.size());
+        events.forEach(event -> eventIds.add(event.getEventId()));
+        jdbcTemplate.update(deleteQuery, new MapSqlParameterSource("eventIds", eventIds));
+        return events;
+    }
+
     private Feed mapRowToFeed(ResultSet resultSet, int rowNum) throws SQLException {
         return Feed.builder()
                 .timestamp(resultSet.getLong("timestamp"))
@@ -49,4 +251,18 @@ public class FeedRepository implements FeedStorage {
                 .eventId(resultSet.getLong("eventId"))
                 .build();
     }
+
+    private String getChainKey(Feed event) {
+        return event.getUserId() + ":" + event.getEventType() + ":" + event.getEntityId();
+    }
+
+    private Feed mapRowToOutboxFeed(ResultSet resultSet) throws SQLException {
+        return Feed.builder()
+                .timestamp(resultSet.getLong("timestamp"))
+                .userId(resultSet.getLong("userId"))
+                .eventType(EventType.valueOf(resultSet.getString("eventType")))
+                .operation(OperationType.valueOf(resultSet.getString("operation")))
+                .entityId(resultSet.getLong("entityId"))
+                .build();
+    }
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.repository.film;
 
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
 
 import java.util.List;
 import java.util.Map;
@@ -20,6 +21,8 @@ public interface DirectorDao {
 
     void addDirectorsToFilm(Long filmId, Set<Integer> directorsIds);
 
+    void addDirectorsToFilms(List<Film> films);
+
     void removeDirectorsFromFilm(Long filmId);
 
     Map<Long, Set<Director>> getDirectorsForFilms(List<Long> filmsIds);
@@ -12,6 +12,8 @@ public interface FilmStorage {
 
     Film addFilm(Film film);
 
+    void addFilms(List<Film> films);
+
     Film updateFilm(Film film);
 
     List<Film> getAllFilms();
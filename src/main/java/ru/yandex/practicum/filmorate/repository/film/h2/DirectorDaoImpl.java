@@ -7,12 +7,14 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotExistsException;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.repository.film.DirectorDao;
+import ru.yandex.practicum.filmorate.repository.insert.EntityInserter;
+import ru.yandex.practicum.filmorate.repository.insert.InsertStatements;
 
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -24,6 +26,8 @@ import java.util.*;
 public class DirectorDaoImpl implements DirectorDao {
     private final JdbcTemplate jdbcTemplate;
     private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final FilmReferenceCache filmReferenceCache;
+    private final EntityInserter entityInserter;
 
     @Override
     public Director findById(Integer id) {
@@ -54,8 +58,8 @@ public class DirectorDaoImpl implements DirectorDao {
 
     @Override
     public Director add(Director director) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate).withTableName("directors").usingGeneratedKeyColumns("director_id");
-        director.setId((int) simpleJdbcInsert.executeAndReturnKey(director.toMap()).longValue());
+        director.setId(entityInserter.insert(InsertStatements.DIRECTOR, director).intValue());
+        filmReferenceCache.putDirector(director);
         log.info("Director created: {} {}.", director.getId(), director.getName());
         return director;
     }
@@ -65,6 +69,7 @@ public class DirectorDaoImpl implements DirectorDao {
         checkDirectorById(director.getId());
         String sqlQuery = "MERGE INTO directors (director_id, director_name) " + "VALUES (?, ?);";
         jdbcTemplate.update(sqlQuery, director.getId(), director.getName());
+        filmReferenceCache.putDirector(director);
 
         log.info("Director updated: {} {}", director.getId(), director.getName());
         return director;
@@ -75,6 +80,7 @@ public class DirectorDaoImpl implements DirectorDao {
         checkDirectorById(directorId);
         String sqlQuery = "DELETE FROM directors " + "WHERE director_id = ?;";
         jdbcTemplate.update(sqlQuery, directorId);
+        filmReferenceCache.removeDirector(directorId);
         log.info("Director id {} deleted", directorId);
     }
 
@@ -95,6 +101,19 @@ public class DirectorDaoImpl implements DirectorDao {
         });
     }
 
+    @Override
+    public void addDirectorsToFilms(List<Film> films) {
+        List<Object[]> batchArgs = new ArrayList<>();
+        for (Film film : films) {
+            for (Director director : film.getDirectors()) {
+                batchArgs.add(new Object[]{film.getId(), director.getId()});
+            }
+        }
+        if (!batchArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate("MERGE INTO film_directors VALUES(?, ?)", batchArgs);
+        }
+    }
+
     @Override
     public void removeDirectorsFromFilm(Long filmId) {
         String sqlQuery = "DELETE FROM film_directors " + "WHERE film_id = ?;";
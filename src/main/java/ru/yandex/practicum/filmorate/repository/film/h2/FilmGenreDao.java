@@ -8,6 +8,7 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.NotExistsException;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.sql.ResultSet;
@@ -42,13 +43,30 @@ public class FilmGenreDao {
 
     }
 
-    public void clearGenresFromFilm(Long filmId) {
-        String sqlQuery = "DELETE " +
-                "FROM film_genre " +
-                "WHERE film_id = :filmId";
-        SqlParameterSource namedParam = new MapSqlParameterSource("filmId", filmId);
+    //Связи с жанрами для нескольких фильмов одним пакетом
+    public void setGenresToFilms(List<Film> films) {
+        String sqlQuery = "MERGE INTO film_genre " +
+                "VALUES ( :filmId, :genreId)";
+        List<SqlParameterSource> namedParamsList = new ArrayList<>();
+        for (Film film : films) {
+            for (Genre genre : film.getGenres()) {
+                namedParamsList.add(new MapSqlParameterSource()
+                        .addValue("filmId", film.getId())
+                        .addValue("genreId", genre.getId()));
+            }
+        }
+        if (namedParamsList.isEmpty()) {
+            return;
+        }
 
-        jdbcTemplate.update(sqlQuery, namedParam);
+        try {
+            jdbcTemplate.batchUpdate(sqlQuery, namedParamsList.toArray(SqlParameterSource[]::new));
+        } catch (DataIntegrityViolationException e) {
+            throw new NotExistsException(
+                    "Genre",
+                    "One of genres doesn't exist"
+            );
+        }
     }
 
     public Map<Long, Set<Genre>> getGenresToFilms(List<Long> filmsIds) {
@@ -8,8 +8,10 @@ import org.springframework.stereotype.Component;
 
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Component
 @RequiredArgsConstructor
@@ -46,6 +48,30 @@ public class FilmLikesDao {
         return filmIdsMapToCountLikes;
     }
 
+    public Set<Long> getUserLikedFilmIds(Long userId) {
+        String sqlQuery = "SELECT film_id " +
+                "FROM user_film_likes " +
+                "WHERE user_id = :userId";
+        SqlParameterSource namedParam = new MapSqlParameterSource("userId", userId);
+
+        return new HashSet<>(jdbcTemplate.queryForList(sqlQuery, namedParam, Long.class));
+    }
+
+    //Все фильмы пользователей, у которых есть хотя бы один общий лайк с userId, кроме уже лайкнутых им
+    public Set<Long> getFilmIdsLikedByNeighbours(Long userId) {
+        String sqlQuery = "SELECT DISTINCT candidate.film_id " +
+                "FROM user_film_likes AS own " +
+                "JOIN user_film_likes AS neighbour ON own.film_id = neighbour.film_id " +
+                "AND neighbour.user_id <> own.user_id " +
+                "JOIN user_film_likes AS candidate ON candidate.user_id = neighbour.user_id " +
+                "LEFT JOIN user_film_likes AS liked ON liked.film_id = candidate.film_id " +
+                "AND liked.user_id = own.user_id " +
+                "WHERE own.user_id = :userId AND liked.user_id IS NULL";
+        SqlParameterSource namedParam = new MapSqlParameterSource("userId", userId);
+
+        return new HashSet<>(jdbcTemplate.queryForList(sqlQuery, namedParam, Long.class));
+    }
+
     public void setFilmLike(Long filmId, Long userId) {
         String sqlQuery = "MERGE INTO user_film_likes " +
                 "VALUES (:userId, :filmId)";
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.repository.film.h2;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/*
+Хранимые процедуры H2, объявляются в schema.sql через CREATE ALIAS.
+Выполняются внутри базы на соединении вызывающего, поэтому вся запись фильма - один вызов в одной транзакции.
+ */
+public final class FilmProcedures {
+
+    private FilmProcedures() {
+    }
+
+    /*
+    UPSERT_FILM: при filmId = NULL вставляет фильм, иначе обновляет его, если поля изменились.
+    Связи с жанрами и режиссёрами приводятся к переданным массивам (id без повторов):
+    удаляются лишние и добавляются недостающие. Возвращает id фильма или NULL, если обновляемого фильма нет.
+     */
+    public static Long upsertFilm(Connection connection, Long filmId, String name, String description,
+                                  Date releaseDate, Integer duration, Integer mpaRatingId,
+                                  Integer[] genreIds, Integer[] directorIds) throws SQLException {
+        long id;
+        if (filmId == null) {
+            id = insertFilm(connection, name, description, releaseDate, duration, mpaRatingId);
+        } else if (updateFilm(connection, filmId, name, description, releaseDate, duration, mpaRatingId)) {
+            id = filmId;
+        } else {
+            return null;
+        }
+        replaceLinks(connection, "film_genre", "genre_id", id, genreIds);
+        replaceLinks(connection, "film_directors", "director_id", id, directorIds);
+        return id;
+    }
+
+    private static long insertFilm(Connection connection, String name, String description,
+                                   Date releaseDate, Integer duration, Integer mpaRatingId) throws SQLException {
+        String sqlQuery = "INSERT INTO film (film_name, description, release_date, duration, mpa_rating_id) " +
+                "VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sqlQuery, new String[]{"film_id"})) {
+            setFilmFields(statement, 1, name, description, releaseDate, duration, mpaRatingId);
+            statement.executeUpdate();
+            try (ResultSet keys = statement.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    //Возвращает false, если фильма с filmId нет
+    private static boolean updateFilm(Connection connection, long filmId, String name, String description,
+                                      Date releaseDate, Integer duration, Integer mpaRatingId) throws SQLException {
+        String sqlQuery = "UPDATE film " +
+                "SET film_name = ?, description = ?, release_date = ?, duration = ?, mpa_rating_id = ? " +
+                "WHERE film_id = ? " +
+                "AND (film_name IS DISTINCT FROM ? OR description IS DISTINCT FROM ? " +
+                "OR release_date IS DISTINCT FROM ? OR duration IS DISTINCT FROM ? " +
+                "OR mpa_rating_id IS DISTINCT FROM ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sqlQuery)) {
+            setFilmFields(statement, 1, name, description, releaseDate, duration, mpaRatingId);
+            statement.setLong(6, filmId);
+            setFilmFields(statement, 7, name, description, releaseDate, duration, mpaRatingId);
+            if (statement.executeUpdate() > 0) {
+                return true;
+            }
+        }
+        //Ни одной строки: либо поля не изменились, либо фильма нет
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM film WHERE film_id = ?")) {
+            statement.setLong(1, filmId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    private static void setFilmFields(PreparedStatement statement, int offset, String name, String description,
+                                      Date releaseDate, Integer duration, Integer mpaRatingId) throws SQLException {
+        statement.setString(offset, name);
+        statement.setString(offset + 1, description);
+        statement.setDate(offset + 2, releaseDate);
+        statement.setObject(offset + 3, duration, Types.INTEGER);
+        statement.setObject(offset + 4, mpaRatingId, Types.INTEGER);
+    }
+
+    private static void replaceLinks(Connection connection, String table, String column,
+                                     long filmId, Integer[] ids) throws SQLException {
+        Integer[] linkIds = ids == null ? new Integer[0] : ids;
+        String deleteSqlQuery = "DELETE FROM " + table + " " +
+                "WHERE film_id = ? AND NOT ARRAY_CONTAINS(CAST(? AS INTEGER ARRAY), " + column + ")";
+        String insertSqlQuery = "INSERT INTO " + table + " (film_id, " + column + ") " +
+                "SELECT ?, t.link_id FROM UNNEST(CAST(? AS INTEGER ARRAY)) AS t (link_id) " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + table + " " +
+                "WHERE film_id = ? AND " + column + " = t.link_id)";
+        try (PreparedStatement statement = connection.prepareStatement(deleteSqlQuery)) {
+            statement.setLong(1, filmId);
+            statement.setObject(2, linkIds);
+            statement.executeUpdate();
+        }
+        if (linkIds.length == 0) {
+            return;
+        }
+        try (PreparedStatement statement = connection.prepareStatement(insertSqlQuery)) {
+            statement.setLong(1, filmId);
+            statement.setObject(2, linkIds);
+            statement.setLong(3, filmId);
+            statement.executeUpdate();
+        }
+    }
+}
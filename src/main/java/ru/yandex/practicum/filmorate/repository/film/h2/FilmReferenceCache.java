@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.repository.film.h2;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotExistsException;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Справочники MPA, жанров и режиссёров в памяти, чтобы собирать фильм из запроса без повторного чтения.
+MPA и жанры заполняются data.sql и не меняются, режиссёры обновляются через DirectorDaoImpl.
+ */
+@Slf4j
+@Component
+public class FilmReferenceCache {
+
+    private final Map<Integer, RatingMPA> mpaById = new HashMap<>();
+    private final Map<Integer, Genre> genresById = new HashMap<>();
+    private final Map<Integer, Director> directorsById = new ConcurrentHashMap<>();
+
+    public FilmReferenceCache(NamedParameterJdbcTemplate jdbcTemplate) {
+        MapSqlParameterSource noParams = new MapSqlParameterSource();
+        jdbcTemplate.query("SELECT mpa_rating_id, mpa_rating_name FROM mpa_rating", noParams, rs -> {
+            mpaById.put(rs.getInt("mpa_rating_id"),
+                    new RatingMPA(rs.getInt("mpa_rating_id"), rs.getString("mpa_rating_name")));
+        });
+        jdbcTemplate.query("SELECT genre_id, genre_name FROM genre", noParams, rs -> {
+            genresById.put(rs.getInt("genre_id"),
+                    new Genre(rs.getInt("genre_id"), rs.getString("genre_name")));
+        });
+        jdbcTemplate.query("SELECT director_id, director_name FROM directors", noParams, rs -> {
+            putDirector(new Director(rs.getInt("director_id"), rs.getString("director_name").trim()));
+        });
+        log.info("Film reference cache loaded: {} mpa rating(s), {} genre(s), {} director(s)",
+                mpaById.size(), genresById.size(), directorsById.size());
+    }
+
+    public RatingMPA getMpa(int mpaId) {
+        RatingMPA mpa = mpaById.get(mpaId);
+        if (mpa == null) {
+            throw new NotExistsException(
+                    "Mpa rating",
+                    String.format("Mpa rating with id %d does not exist", mpaId)
+            );
+        }
+        return mpa;
+    }
+
+    public Genre getGenre(int genreId) {
+        Genre genre = genresById.get(genreId);
+        if (genre == null) {
+            throw new NotExistsException(
+                    "Genre",
+                    String.format("Genre with id %d does not exist", genreId)
+            );
+        }
+        return genre;
+    }
+
+    public Director getDirector(Integer directorId) {
+        Director director = directorId == null ? null : directorsById.get(directorId);
+        if (director == null) {
+            throw new NotExistsException(
+                    "Director",
+                    String.format("Director with id %d does not exist", directorId)
+            );
+        }
+        return director;
+    }
+
+    public void putDirector(Director director) {
+        directorsById.put(director.getId(), new Director(director.getId(), director.getName()));
+    }
+
+    public void removeDirector(Integer directorId) {
+        directorsById.remove(directorId);
+    }
+}
@@ -7,14 +7,16 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.InvalidFieldsException;
+import ru.yandex.practicum.filmorate.exception.NotExistsException;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.repository.film.DirectorDao;
 import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
+import ru.yandex.practicum.filmorate.repository.insert.EntityInserter;
+import ru.yandex.practicum.filmorate.repository.insert.InsertStatements;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -31,78 +33,41 @@ import static ru.yandex.practicum.filmorate.model.Constants.SORT_BY_YEAR;
 public class FilmRepository implements FilmStorage {
 
     private final NamedParameterJdbcTemplate jdbcTemplate;
-    private final RatingMpaDao ratingMpaDao;
     private final FilmGenreDao filmGenreDao;
     private final FilmLikesDao filmLikesDao;
     private final DirectorDao directorDao;
+    private final FilmReferenceCache filmReferenceCache;
+    private final EntityInserter entityInserter;
 
     @Override
     @Transactional
     public Film addFilm(Film film) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate.getJdbcTemplate())
-                .withTableName("film")
-                .usingGeneratedKeyColumns("film_id");
-
-        Long filmId = simpleJdbcInsert.executeAndReturnKey(film.mapToDb()).longValue();
-
-        //отдельно лениво и в рамках транзакции добавляем зависящие от БД поля
-        if (film.getMpa() != null) {
-            ratingMpaDao.setRatingMpaToFilm(filmId, film.getMpa().getId());
-        }
-
-        if (!film.getGenres().isEmpty()) {
-            Set<Integer> genresIdSet = film.getGenres()
-                    .stream()
-                    .mapToInt(Genre::getId)
-                    .boxed()
-                    .collect(Collectors.toSet());
-
-            filmGenreDao.setGenresToFilm(filmId, genresIdSet);
-        }
-
-        addDirector(film, filmId);
-
-        film.setId(filmId);
-        fetchAdditionalParamsToFilmsList(Collections.singletonList(film));
+        film.setId(upsertFilm(film));
         return film;
     }
 
+    /*
+    Пакетная вставка: строки film вместе с MPA одним JDBC-пакетом, затем связи с жанрами и режиссёрами
+    всех фильмов по одному пакету. Фильмы не перечитываются, им только проставляются сгенерированные id.
+     */
     @Override
     @Transactional
-    public Film updateFilm(Film film) {
-        String sqlQuery = "UPDATE film " +
-                "SET film_name = :filmName, description = :description, release_date = :releaseDate, " +
-                "duration = :duration " +
-                "WHERE film_id = :filmId";
-        SqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("filmName", film.getName())
-                .addValue("description", film.getDescription())
-                .addValue("releaseDate", film.getReleaseDate())
-                .addValue("duration", film.getDuration())
-                .addValue("mpaRatingId", film.getMpa().getId())
-                .addValue("filmId", film.getId());
-
-        jdbcTemplate.update(sqlQuery, namedParams);
-
-        if (film.getMpa() != null) {
-            ratingMpaDao.setRatingMpaToFilm(film.getId(), film.getMpa().getId());
-        }
-
-        filmGenreDao.clearGenresFromFilm(film.getId());
-        if (!film.getGenres().isEmpty()) {
-            Set<Integer> genresIdSet = film.getGenres()
-                    .stream()
-                    .mapToInt(Genre::getId)
-                    .boxed()
-                    .collect(Collectors.toSet());
+    public void addFilms(List<Film> films) {
+        entityInserter.insertAll(InsertStatements.FILM, films, Film::setId);
+        filmGenreDao.setGenresToFilms(films);
+        directorDao.addDirectorsToFilms(films);
+    }
 
-            filmGenreDao.setGenresToFilm(film.getId(), genresIdSet);
+    @Override
+    @Transactional
+    public Film updateFilm(Film film) {
+        //Наличие фильма проверяет сама процедура, отдельный запрос перед записью не нужен
+        if (upsertFilm(film) == null) {
+            throw new NotExistsException(
+                    "Film",
+                    String.format("Film with id %d does not exist", film.getId())
+            );
         }
-
-        directorDao.removeDirectorsFromFilm(film.getId());
-        addDirector(film, film.getId());
-
-        fetchAdditionalParamsToFilmsList(Collections.singletonList(film));
         return film;
     }
 
@@ -407,16 +372,38 @@ public class FilmRepository implements FilmStorage {
         return filmOptional;
     }
 
-    private void addDirector(Film film, Long filmId) {
-        if (!film.getDirectors().isEmpty()) {
-            Set<Integer> directorsIdSet = film.getDirectors()
-                    .stream()
-                    .mapToInt(Director::getId)
-                    .boxed()
-                    .collect(Collectors.toSet());
-
-            directorDao.addDirectorsToFilm(filmId, directorsIdSet);
+    /*
+    Запись фильма одним вызовом процедуры UPSERT_FILM (FilmProcedures): строка film с MPA
+    и связи с жанрами и режиссёрами. Ссылки проверяются и дополняются названиями по справочникам в памяти,
+    поэтому фильм после записи не перечитывается.
+     */
+    private Long upsertFilm(Film film) {
+        String sqlQuery = "CALL upsert_film(:filmId, :filmName, :description, :releaseDate, :duration, " +
+                ":mpaRatingId, :genreIds, :directorIds)";
+        if (film.getMpa() != null) {
+            film.setMpa(filmReferenceCache.getMpa(film.getMpa().getId()));
         }
+        film.setGenres(film.getGenres().stream()
+                .map(genre -> filmReferenceCache.getGenre(genre.getId()))
+                .collect(Collectors.toSet()));
+        film.setDirectors(film.getDirectors().stream()
+                .map(director -> filmReferenceCache.getDirector(director.getId()))
+                .collect(Collectors.toSet()));
+        SqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("filmId", film.getId())
+                .addValue("filmName", film.getName())
+                .addValue("description", film.getDescription())
+                .addValue("releaseDate", film.getReleaseDate())
+                .addValue("duration", film.getDuration())
+                .addValue("mpaRatingId", film.getMpa() == null ? null : film.getMpa().getId())
+                .addValue("genreIds", film.getGenres().stream()
+                        .map(Genre::getId)
+                        .toArray(Integer[]::new))
+                .addValue("directorIds", film.getDirectors().stream()
+                        .map(Director::getId)
+                        .toArray(Integer[]::new));
+
+        return jdbcTemplate.queryForObject(sqlQuery, namedParams, Long.class);
     }
 
     private Film mapRowToFilm(ResultSet resultSet, int rowNum) throws SQLException {
@@ -1,7 +1,6 @@
 package ru.yandex.practicum.filmorate.repository.film.h2;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -38,24 +37,6 @@ public class RatingMpaDao {
         return ratingMPA;
     }
 
-    public void setRatingMpaToFilm(Long filmId, int ratingMpaId) {
-        String sqlQuery = "MERGE INTO film (film_id, mpa_rating_id) " +
-                "KEY (film_id) " +
-                "VALUES (:filmId, :ratingMpaId) ";
-        SqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("ratingMpaId", ratingMpaId)
-                .addValue("filmId", filmId);
-
-        try {
-            jdbcTemplate.update(sqlQuery, namedParams);
-        } catch (DataIntegrityViolationException e) {
-            throw new NotExistsException(
-                    "Mpa rating",
-                    String.format("Mpa rating with id %d does not exist", ratingMpaId)
-            );
-        }
-    }
-
     public List<RatingMPA> getAllMpa() {
         String sqlQuery = "SELECT mpa_rating_id, mpa_rating_name " +
                 "FROM mpa_rating";
@@ -42,6 +42,11 @@ public class InMemoryFilmStorage implements FilmStorage {
         return Optional.ofNullable(films.get(filmId));
     }
 
+    @Override
+    public void addFilms(List<Film> films) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public Map<Long, Set<Long>> fillInUserLikes() {
         throw new UnsupportedOperationException();
@@ -15,9 +15,9 @@ public interface FilmReviewStorage {
 
     Optional<FilmReview> getReviewById(Long reviewId);
 
-    List<FilmReview> getFilmReviews(Long filmId, int count);
+    List<FilmReview> getFilmReviews(Long filmId, Integer afterUseful, Long afterReviewId, int count);
 
-    List<FilmReview> getAllReviews(int count);
+    List<FilmReview> getAllReviews(Integer afterUseful, Long afterReviewId, int count);
 
     void addLikeToReview(Long reviewId, Long userId);
 
@@ -26,4 +26,6 @@ public interface FilmReviewStorage {
     void addDislikeToReview(Long reviewId, Long userId);
 
     boolean removeDislikeFromReview(Long reviewId, Long userId);
+
+    void removeUserRatings(Long userId);
 }
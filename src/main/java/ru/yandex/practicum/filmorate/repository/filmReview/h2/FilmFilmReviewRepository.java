@@ -3,10 +3,10 @@ package ru.yandex.practicum.filmorate.repository.filmReview.h2;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotExistsException;
@@ -15,11 +15,14 @@ import ru.yandex.practicum.filmorate.model.feed.EventType;
 import ru.yandex.practicum.filmorate.model.feed.Feed;
 import ru.yandex.practicum.filmorate.model.feed.OperationType;
 import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.repository.insert.EntityInserter;
+import ru.yandex.practicum.filmorate.repository.insert.InsertStatements;
 import ru.yandex.practicum.filmorate.repository.filmReview.FilmReviewStorage;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -28,18 +31,17 @@ import java.util.Optional;
 @RequiredArgsConstructor
 @Component
 public class FilmFilmReviewRepository implements FilmReviewStorage {
+    private static final String REVIEW_COLUMNS = "review_id, user_id, film_id, content, is_positive, useful";
+
     private final FeedStorage feedStorage;
+    private final EntityInserter entityInserter;
 
     private final NamedParameterJdbcTemplate jdbcTemplate;
 
     @Override
+    @Transactional
     public FilmReview addReview(FilmReview filmReview) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate.getJdbcTemplate())
-                .withTableName("review")
-                .usingGeneratedKeyColumns("review_id");
-
-        Long reviewId = simpleJdbcInsert.executeAndReturnKey(filmReview.mapToDb()).longValue();
-        filmReview.setReviewId(reviewId);
+        filmReview.setReviewId(entityInserter.insert(InsertStatements.REVIEW, filmReview));
         Feed feed = Feed.builder()
                 .timestamp(Instant.now().toEpochMilli())
                 .userId(filmReview.getUserId())
@@ -74,7 +76,6 @@ public class FilmFilmReviewRepository implements FilmReviewStorage {
 
         //Возвращаем отзыв из БД, так как в полученном могут быть некорректные поля
         FilmReview filmReviewFromDb = getReviewById(reviewId).get();
-        filmReviewFromDb.setUseful(calculateUseful(reviewId));
         Feed feed = Feed.builder()
                 .timestamp(Instant.now().toEpochMilli())
                 .userId(filmReviewFromDb.getUserId())
@@ -88,13 +89,9 @@ public class FilmFilmReviewRepository implements FilmReviewStorage {
 
     @Override
     public Optional<FilmReview> getReviewById(Long reviewId) {
-        String sqlQuery = "SELECT r.review_id, r.user_id, r.film_id, r.content, r.is_positive, " +
-                "COUNT(DISTINCT(LIKES.USER_ID)) - COUNT(DISTINCT(DISLIKES.USER_ID)) AS useful " +
-                "FROM review AS r " +
-                "LEFT JOIN user_review_likes AS likes ON likes.review_id = r.review_id " +
-                "LEFT JOIN user_review_dislikes AS dislikes ON dislikes.review_id = r.review_id " +
-                "WHERE r.review_id = :reviewId " +
-                "GROUP BY r.review_id";
+        String sqlQuery = "SELECT " + REVIEW_COLUMNS + " " +
+                "FROM review " +
+                "WHERE review_id = :reviewId";
         MapSqlParameterSource namedParam = new MapSqlParameterSource("reviewId", reviewId);
         Optional<FilmReview> reviewOptional;
 
@@ -108,93 +105,94 @@ public class FilmFilmReviewRepository implements FilmReviewStorage {
         return reviewOptional;
     }
 
+    /*
+    Поиск по индексу idx__review__film_id__useful: страница после курсора (afterUseful, afterReviewId) начинается
+    с позиции курсора в индексе, поэтому глубокая страница стоит столько же, сколько первая
+     */
     @Override
-    public List<FilmReview> getFilmReviews(Long filmId, int count) {
-        String sqlQuery = "SELECT r.review_id, r.user_id, r.film_id, r.content, r.is_positive, " +
-                "COUNT(DISTINCT(LIKES.USER_ID)) - COUNT(DISTINCT(DISLIKES.USER_ID)) AS useful " +
-                "FROM review AS r " +
-                "LEFT JOIN user_review_likes AS likes ON likes.review_id = r.review_id " +
-                "LEFT JOIN user_review_dislikes AS dislikes ON dislikes.review_id = r.review_id " +
-                "WHERE r.film_id = :filmId " +
-                "GROUP BY r.review_id " +
-                "ORDER BY COUNT(DISTINCT(LIKES.USER_ID)) - COUNT(DISTINCT(DISLIKES.USER_ID)) DESC " +
-                "LIMIT :count";
+    public List<FilmReview> getFilmReviews(Long filmId, Integer afterUseful, Long afterReviewId, int count) {
         MapSqlParameterSource namedParams = new MapSqlParameterSource()
                 .addValue("filmId", filmId)
                 .addValue("count", count);
+        String sqlQuery = "SELECT " + REVIEW_COLUMNS + " " +
+                "FROM review " +
+                "WHERE film_id = :filmId " +
+                createCursorCondition("AND ", afterUseful, afterReviewId, namedParams) +
+                "ORDER BY useful DESC, review_id " +
+                "LIMIT :count";
 
-        try {
-            return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToReviewWithUseful);
-        } catch (EmptyResultDataAccessException e) {
-            return List.of();
-        }
-
+        return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToReviewWithUseful);
     }
 
     @Override
-    public List<FilmReview> getAllReviews(int count) {
-        String sqlQuery = "SELECT r.review_id, r.user_id, r.film_id, r.content, r.is_positive, " +
-                "COUNT(DISTINCT(LIKES.USER_ID)) - COUNT(DISTINCT(DISLIKES.USER_ID)) AS useful " +
-                "FROM review AS r " +
-                "LEFT JOIN user_review_likes AS likes ON likes.review_id = r.review_id " +
-                "LEFT JOIN user_review_dislikes AS dislikes ON dislikes.review_id = r.review_id " +
-                "GROUP BY r.review_id " +
-                "ORDER BY COUNT(likes.user_id) - COUNT(dislikes.user_id) DESC " +
-                "LIMIT :count";
+    public List<FilmReview> getAllReviews(Integer afterUseful, Long afterReviewId, int count) {
         MapSqlParameterSource namedParams = new MapSqlParameterSource("count", count);
+        String sqlQuery = "SELECT " + REVIEW_COLUMNS + " " +
+                "FROM review " +
+                createCursorCondition("WHERE ", afterUseful, afterReviewId, namedParams) +
+                "ORDER BY useful DESC, review_id " +
+                "LIMIT :count";
 
-        try {
-            return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToReviewWithUseful);
-        } catch (EmptyResultDataAccessException e) {
-            return List.of();
-        }
+        return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToReviewWithUseful);
     }
 
+    /*
+    Оценка и счётчики отзыва меняются в одной транзакции. Счётчик меняется, только если строка оценки
+    действительно добавилась или удалилась, поэтому повторный лайк не увеличивает useful
+     */
     @Override
+    @Transactional
     public void addLikeToReview(Long reviewId, Long userId) {
-        String sqlQuery = "MERGE INTO user_review_likes " +
-                "VALUES (:userId, :reviewId)";
-        MapSqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId)
-                .addValue("reviewId", reviewId);
-
-        jdbcTemplate.update(sqlQuery, namedParams);
+        if (addRating("user_review_likes", reviewId, userId)) {
+            updateRatingCounters(List.of(reviewId), 1, 0);
+        }
     }
 
     @Override
+    @Transactional
     public boolean removeLikeFromReview(Long reviewId, Long userId) {
-        String sqlQuery = "DELETE FROM user_review_likes " +
-                "WHERE review_id = :reviewId AND user_id = :userId";
-        MapSqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId)
-                .addValue("reviewId", reviewId);
-
-        return jdbcTemplate.update(sqlQuery, namedParams) > 0;
+        boolean isRemoved = removeRating("user_review_likes", reviewId, userId);
+        if (isRemoved) {
+            updateRatingCounters(List.of(reviewId), -1, 0);
+        }
+        return isRemoved;
     }
 
     @Override
+    @Transactional
     public void addDislikeToReview(Long reviewId, Long userId) {
-        String sqlQuery = "MERGE INTO user_review_dislikes " +
-                "VALUES (:userId, :reviewId)";
-        MapSqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId)
-                .addValue("reviewId", reviewId);
-
-        jdbcTemplate.update(sqlQuery, namedParams);
+        if (addRating("user_review_dislikes", reviewId, userId)) {
+            updateRatingCounters(List.of(reviewId), 0, 1);
+        }
     }
 
     @Override
+    @Transactional
     public boolean removeDislikeFromReview(Long reviewId, Long userId) {
-        String sqlQuery = "DELETE FROM user_review_dislikes " +
-                "WHERE review_id = :reviewId AND user_id = :userId";
-        MapSqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId)
-                .addValue("reviewId", reviewId);
+        boolean isRemoved = removeRating("user_review_dislikes", reviewId, userId);
+        if (isRemoved) {
+            updateRatingCounters(List.of(reviewId), 0, -1);
+        }
+        return isRemoved;
+    }
 
-        return jdbcTemplate.update(sqlQuery, namedParams) > 0;
+    //Оценки удаляемого пользователя снимаются явно: каскадное удаление не обновило бы счётчики отзывов
+    @Override
+    @Transactional
+    public void removeUserRatings(Long userId) {
+        MapSqlParameterSource namedParam = new MapSqlParameterSource("userId", userId);
+        List<Long> likedReviewIds = jdbcTemplate.queryForList(
+                "SELECT review_id FROM OLD TABLE (DELETE FROM user_review_likes WHERE user_id = :userId)",
+                namedParam, Long.class);
+        List<Long> dislikedReviewIds = jdbcTemplate.queryForList(
+                "SELECT review_id FROM OLD TABLE (DELETE FROM user_review_dislikes WHERE user_id = :userId)",
+                namedParam, Long.class);
+        updateRatingCounters(likedReviewIds, -1, 0);
+        updateRatingCounters(dislikedReviewIds, 0, -1);
     }
 
     @Override
+    @Transactional
     public boolean deleteReview(Long reviewId) {
         Long userId = getReviewById(reviewId).get().getUserId();
         String sqlQuery = "DELETE FROM review " +
@@ -211,25 +209,65 @@ public class FilmFilmReviewRepository implements FilmReviewStorage {
         return jdbcTemplate.update(sqlQuery, namedParam) > 0;
     }
 
-    private Integer calculateUseful(Long reviewId) {
-        String sqlQuery = "SELECT " +
-                "(SELECT COUNT(user_id) " +
-                "FROM user_review_likes " +
-                "WHERE review_id = :reviewId) " +
-                "- " +
-                "(SELECT COUNT(user_id) " +
-                "FROM user_review_dislikes " +
-                "WHERE review_id = :reviewId)";
+    /*
+    Отзывы после курсора в порядке useful DESC, review_id. Условие useful <= :afterUseful задаёт начало диапазона
+    в индексе, второе отсеивает отзывы с тем же useful, уже отданные на предыдущей странице
+     */
+    private String createCursorCondition(String prefix, Integer afterUseful, Long afterReviewId,
+                                         MapSqlParameterSource namedParams) {
+        if (afterUseful == null) {
+            return "";
+        }
+        namedParams.addValue("afterUseful", afterUseful)
+                .addValue("afterReviewId", afterReviewId);
+        return prefix + "useful <= :afterUseful " +
+                "AND (useful < :afterUseful OR review_id > :afterReviewId) ";
+    }
 
-        MapSqlParameterSource namedParam = new MapSqlParameterSource("reviewId", reviewId);
+    private boolean addRating(String ratingTable, Long reviewId, Long userId) {
+        String sqlQuery = "INSERT INTO " + ratingTable + " (user_id, review_id) " +
+                "SELECT :userId, :reviewId " +
+                "WHERE NOT EXISTS (SELECT 1 FROM " + ratingTable + " " +
+                "WHERE user_id = :userId AND review_id = :reviewId)";
+        MapSqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("reviewId", reviewId);
 
         try {
-            return jdbcTemplate.queryForObject(sqlQuery, namedParam, Integer.class);
-        } catch (EmptyResultDataAccessException e) {
-            return 0;
+            return jdbcTemplate.update(sqlQuery, namedParams) > 0;
+        } catch (DuplicateKeyException e) {
+            //Ту же оценку параллельно добавил другой запрос, он же и учёл её в счётчиках
+            return false;
         }
     }
 
+    private boolean removeRating(String ratingTable, Long reviewId, Long userId) {
+        String sqlQuery = "DELETE FROM " + ratingTable + " " +
+                "WHERE review_id = :reviewId AND user_id = :userId";
+        MapSqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("reviewId", reviewId);
+
+        return jdbcTemplate.update(sqlQuery, namedParams) > 0;
+    }
+
+    private void updateRatingCounters(Collection<Long> reviewIds, int likesDelta, int dislikesDelta) {
+        if (reviewIds.isEmpty()) {
+            return;
+        }
+        String sqlQuery = "UPDATE review " +
+                "SET likes_count = likes_count + :likesDelta, " +
+                "dislikes_count = dislikes_count + :dislikesDelta, " +
+                "useful = useful + :likesDelta - :dislikesDelta " +
+                "WHERE review_id IN (:reviewIds)";
+        MapSqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("likesDelta", likesDelta)
+                .addValue("dislikesDelta", dislikesDelta)
+                .addValue("reviewIds", reviewIds);
+
+        jdbcTemplate.update(sqlQuery, namedParams);
+    }
+
     private FilmReview mapRowToReviewWithUseful(ResultSet resultSet, int rowNum) throws SQLException {
         return FilmReview.builder()
                 .reviewId(resultSet.getLong("review_id"))
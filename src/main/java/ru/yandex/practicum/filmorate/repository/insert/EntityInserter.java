@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.repository.insert;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/*
+Общий слой вставок вместо SimpleJdbcInsert: без чтения метаданных таблицы и промежуточной Map.
+Текст каждой вставки постоянный, поэтому H2 берёт разобранную команду из кэша сессии
+ */
+@Component
+@RequiredArgsConstructor
+public class EntityInserter {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    //Возвращает сгенерированный ключ или null, если у вставки нет колонки ключа
+    public <T> Long insert(InsertStatement<T> insert, T entity) {
+        return jdbcTemplate.execute(
+                (Connection connection) -> prepare(connection, insert),
+                (PreparedStatement statement) -> {
+                    insert.getBinder().bind(statement, entity);
+                    statement.executeUpdate();
+                    if (insert.getKeyColumn() == null) {
+                        return null;
+                    }
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        keys.next();
+                        return keys.getLong(1);
+                    }
+                }
+        );
+    }
+
+    //Вставка одним JDBC-пакетом, сгенерированные ключи передаются keySetter в порядке списка
+    public <T> void insertAll(InsertStatement<T> insert, List<T> entities, BiConsumer<T, Long> keySetter) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute(
+                (Connection connection) -> prepare(connection, insert),
+                (PreparedStatement statement) -> {
+                    for (T entity : entities) {
+                        insert.getBinder().bind(statement, entity);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    if (insert.getKeyColumn() == null) {
+                        return null;
+                    }
+                    try (ResultSet keys = statement.getGeneratedKeys()) {
+                        for (int i = 0; keys.next(); i++) {
+                            keySetter.accept(entities.get(i), keys.getLong(1));
+                        }
+                    }
+                    return null;
+                }
+        );
+    }
+
+    private PreparedStatement prepare(Connection connection, InsertStatement<?> insert) throws SQLException {
+        if (insert.getKeyColumn() == null) {
+            return connection.prepareStatement(insert.getSql());
+        }
+        return connection.prepareStatement(insert.getSql(), new String[]{insert.getKeyColumn()});
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.repository.insert;
+
+import lombok.Getter;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+//Готовая вставка сущности: текст SQL собирается один раз, поля привязываются прямо из объекта
+@Getter
+public final class InsertStatement<T> {
+
+    private final String sql;
+    private final String keyColumn;
+    private final FieldBinder<T> binder;
+
+    private InsertStatement(String sql, String keyColumn, FieldBinder<T> binder) {
+        this.sql = sql;
+        this.keyColumn = keyColumn;
+        this.binder = binder;
+    }
+
+    //keyColumn - колонка сгенерированного ключа или null, если ключ не нужен
+    public static <T> InsertStatement<T> of(String table, String keyColumn, List<String> columns,
+                                            FieldBinder<T> binder) {
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") " +
+                "VALUES (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+        return new InsertStatement<>(sql, keyColumn, binder);
+    }
+
+    @FunctionalInterface
+    public interface FieldBinder<T> {
+        void bind(PreparedStatement statement, T entity) throws SQLException;
+    }
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.repository.insert;
+
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmReview;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+//Вставки сущностей, создаются один раз при загрузке класса
+public final class InsertStatements {
+
+    public static final InsertStatement<User> USER = InsertStatement.of(
+            "users", "user_id",
+            List.of("user_name", "login", "email", "birthday"),
+            (statement, user) -> {
+                statement.setString(1, user.getName());
+                statement.setString(2, user.getLogin());
+                statement.setString(3, user.getEmail());
+                statement.setDate(4, Date.valueOf(user.getBirthday()));
+            });
+
+    public static final InsertStatement<Film> FILM = InsertStatement.of(
+            "film", "film_id",
+            List.of("film_name", "description", "release_date", "duration", "mpa_rating_id"),
+            (statement, film) -> {
+                statement.setString(1, film.getName());
+                statement.setString(2, film.getDescription());
+                statement.setDate(3, Date.valueOf(film.getReleaseDate()));
+                statement.setInt(4, film.getDuration());
+                statement.setInt(5, film.getMpa().getId());
+            });
+
+    public static final InsertStatement<FilmReview> REVIEW = InsertStatement.of(
+            "review", "review_id",
+            List.of("user_id", "film_id", "content", "is_positive"),
+            (statement, review) -> {
+                statement.setLong(1, review.getUserId());
+                statement.setLong(2, review.getFilmId());
+                statement.setString(3, review.getContent());
+                statement.setBoolean(4, review.getIsPositive());
+            });
+
+    public static final InsertStatement<Director> DIRECTOR = InsertStatement.of(
+            "directors", "director_id",
+            List.of("director_name"),
+            (statement, director) -> statement.setString(1, director.getName()));
+
+    //Событие в outbox, ключ не нужен: eventId присваивается при переносе в ленту
+    public static final InsertStatement<Feed> FEED_OUTBOX_EVENT = InsertStatement.of(
+            "feed_outbox", null,
+            List.of("timestamp", "userId", "eventType", "operation", "entityId"),
+            InsertStatements::bindFeed);
+
+    public static final InsertStatement<Feed> FEED_EVENT = InsertStatement.of(
+            "feed", "eventId",
+            List.of("timestamp", "userId", "eventType", "operation", "entityId"),
+            InsertStatements::bindFeed);
+
+    private InsertStatements() {
+    }
+
+    private static void bindFeed(PreparedStatement statement, Feed feed) throws SQLException {
+        statement.setLong(1, feed.getTimestamp());
+        statement.setLong(2, feed.getUserId());
+        statement.setString(3, feed.getEventType().toString());
+        statement.setString(4, feed.getOperation().toString());
+        statement.setLong(5, feed.getEntityId());
+    }
+}
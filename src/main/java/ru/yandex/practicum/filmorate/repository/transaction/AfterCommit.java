@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.repository.transaction;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+//Изменения кэшей и индексов в памяти применяются только после фиксации, чтобы откат не оставил в них лишнего
+public final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    //Вне транзакции действие выполняется сразу
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
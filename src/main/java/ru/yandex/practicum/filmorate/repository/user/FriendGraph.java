@@ -0,0 +1,444 @@
+package ru.yandex.practicum.filmorate.repository.user;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FriendConfirmationStatus;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/*
+Граф дружбы в памяти: для каждого пользователя отсортированные массивы id
+с подтверждёнными (CONFIRMED) и ожидающими (WAITING_FOR_APPROVAL) записями user_friend.
+Массивы не изменяются на месте, а подменяются копией, поэтому читатели работают без блокировок.
+ */
+@Slf4j
+@Component
+public class FriendGraph {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<Integer, int[]> confirmed = new ConcurrentHashMap<>();
+    private final Map<Integer, int[]> pending = new ConcurrentHashMap<>();
+    private final int maxFriends;
+    private final int maxFriendsOfFriend;
+    private final int maxPathDepth;
+    private final long pathBudgetNanos;
+
+    public FriendGraph(NamedParameterJdbcTemplate jdbcTemplate,
+                       @Value("${users.suggestions.max-friends}") int maxFriends,
+                       @Value("${users.suggestions.max-friends-of-friend}") int maxFriendsOfFriend,
+                       @Value("${users.path.max-depth}") int maxPathDepth,
+                       @Value("${users.path.time-budget-ms}") long pathBudgetMs) {
+        this.maxFriends = maxFriends;
+        this.maxFriendsOfFriend = maxFriendsOfFriend;
+        this.maxPathDepth = maxPathDepth;
+        this.pathBudgetNanos = TimeUnit.MILLISECONDS.toNanos(pathBudgetMs);
+        String sqlQuery = "SELECT user_id, friend_id, confirmation_status " +
+                "FROM user_friend";
+        int[] edges = new int[1];
+
+        jdbcTemplate.query(sqlQuery, new MapSqlParameterSource(), rs -> {
+            setEdge(rs.getInt("user_id"), rs.getInt("friend_id"),
+                    FriendConfirmationStatus.fromCode(rs.getInt("confirmation_status")));
+            edges[0]++;
+        });
+        log.info("Friend graph loaded with {} edge(s)", edges[0]);
+    }
+
+    public int[] getFriends(long userId) {
+        return confirmed.getOrDefault((int) userId, EMPTY);
+    }
+
+    public int[] getPending(long userId) {
+        return pending.getOrDefault((int) userId, EMPTY);
+    }
+
+    public int[] getCommonFriends(long userId, long otherUserId) {
+        return intersect(getFriends(userId), getFriends(otherUserId));
+    }
+
+    //Число общих друзей пользователя с каждым из otherUserIds, пары считаются параллельно
+    public int[] countCommonFriends(long userId, long[] otherUserIds) {
+        int[] friends = getFriends(userId);
+        int[] counts = new int[otherUserIds.length];
+        IntStream.range(0, otherUserIds.length).parallel()
+                .forEach(i -> counts[i] = countIntersection(friends, getFriends(otherUserIds[i])));
+        return counts;
+    }
+
+    //Общие друзья всех пользователей: попарные пересечения сворачиваются деревом в параллельном потоке
+    public int[] getCommonFriends(long[] userIds) {
+        return Arrays.stream(userIds).parallel()
+                .mapToObj(this::getFriends)
+                .reduce(FriendGraph::intersect)
+                .orElse(EMPTY);
+    }
+
+    public synchronized void setEdge(long userId, long friendId, FriendConfirmationStatus status) {
+        int user = (int) userId;
+        int friend = (int) friendId;
+        if (status == FriendConfirmationStatus.CONFIRMED) {
+            remove(pending, user, friend);
+            insert(confirmed, user, friend);
+        } else {
+            remove(confirmed, user, friend);
+            insert(pending, user, friend);
+        }
+    }
+
+    public synchronized void removeEdge(long userId, long friendId) {
+        remove(confirmed, (int) userId, (int) friendId);
+        remove(pending, (int) userId, (int) friendId);
+    }
+
+    //Записи user_friend всегда существуют парами, поэтому обратные рёбра находятся по своим спискам
+    public synchronized void removeUser(long userId) {
+        int user = (int) userId;
+        int[] userConfirmed = confirmed.getOrDefault(user, EMPTY);
+        int[] userPending = pending.getOrDefault(user, EMPTY);
+        for (int friend : userConfirmed) {
+            removeEdge(friend, user);
+        }
+        for (int friend : userPending) {
+            removeEdge(friend, user);
+        }
+        confirmed.remove(user);
+        pending.remove(user);
+    }
+
+    /*
+    Кандидаты в друзья второго уровня, упорядоченные по числу общих друзей.
+    У хабов просматривается не больше maxFriends друзей и не больше maxFriendsOfFriend их друзей,
+    выборка берётся с равным шагом от случайного смещения, поэтому время ответа ограничено.
+     */
+    public int[] suggestFriends(long userId, int count) {
+        int user = (int) userId;
+        int[] friends = getFriends(userId);
+        IntCounter mutualCounts = new IntCounter(Math.min(friends.length, maxFriends) * 4);
+
+        for (int friend : sample(friends, maxFriends)) {
+            for (int candidate : sample(getFriends(friend), maxFriendsOfFriend)) {
+                if (candidate != user && Arrays.binarySearch(friends, candidate) < 0) {
+                    mutualCounts.increment(candidate);
+                }
+            }
+        }
+        return mutualCounts.top(count);
+    }
+
+    /*
+    Кратчайшая цепочка друзей от userId до otherUserId двунаправленным поиском в ширину.
+    Прямой поиск идёт по подтверждённым друзьям, обратный - по тем, у кого пользователь в подтверждённых друзьях.
+    Каждый раз расширяется меньший фронт; поиск прекращается по глубине maxPathDepth или по бюджету времени.
+    Возвращает id пользователей цепочки включая концы или пустой массив, если цепочка не найдена.
+     */
+    public int[] findPath(long userId, long otherUserId) {
+        int source = (int) userId;
+        int target = (int) otherUserId;
+        if (source == target) {
+            return new int[]{source};
+        }
+        long deadline = System.nanoTime() + pathBudgetNanos;
+        BitSet forwardVisited = new BitSet();
+        BitSet backwardVisited = new BitSet();
+        Map<Integer, Integer> forwardParents = new HashMap<>();
+        Map<Integer, Integer> backwardParents = new HashMap<>();
+        forwardVisited.set(source);
+        backwardVisited.set(target);
+        int[] forwardFrontier = {source};
+        int[] backwardFrontier = {target};
+
+        for (int depth = 0; depth < maxPathDepth; depth++) {
+            if (forwardFrontier.length == 0 || backwardFrontier.length == 0 || System.nanoTime() > deadline) {
+                break;
+            }
+            boolean forward = forwardFrontier.length <= backwardFrontier.length;
+            int[] frontier = forward ? forwardFrontier : backwardFrontier;
+            BitSet visited = forward ? forwardVisited : backwardVisited;
+            BitSet otherVisited = forward ? backwardVisited : forwardVisited;
+            Map<Integer, Integer> parents = forward ? forwardParents : backwardParents;
+            int[] next = new int[16];
+            int nextSize = 0;
+
+            for (int user : frontier) {
+                if (System.nanoTime() > deadline) {
+                    log.debug("Path search from {} to {} exceeded its time budget", userId, otherUserId);
+                    return new int[0];
+                }
+                int[] neighbours = forward ? getFriends(user) : getFollowers(user);
+                for (int neighbour : neighbours) {
+                    if (visited.get(neighbour)) {
+                        continue;
+                    }
+                    visited.set(neighbour);
+                    parents.put(neighbour, user);
+                    if (otherVisited.get(neighbour)) {
+                        return buildPath(neighbour, source, target, forwardParents, backwardParents);
+                    }
+                    if (nextSize == next.length) {
+                        next = Arrays.copyOf(next, nextSize * 2);
+                    }
+                    next[nextSize++] = neighbour;
+                }
+            }
+            if (forward) {
+                forwardFrontier = Arrays.copyOf(next, nextSize);
+            } else {
+                backwardFrontier = Arrays.copyOf(next, nextSize);
+            }
+        }
+        return new int[0];
+    }
+
+    /*
+    Пользователи, у которых userId в подтверждённых друзьях. Записи user_friend существуют парами, поэтому
+    это все из pending (обратная запись подтверждена) и те из confirmed, у кого обратная запись тоже подтверждена.
+     */
+    public int[] getFollowers(long userId) {
+        int[] userPending = getPending(userId);
+        int[] userConfirmed = getFriends(userId);
+        int[] followers = Arrays.copyOf(userPending, userPending.length + userConfirmed.length);
+        int size = userPending.length;
+        for (int friend : userConfirmed) {
+            if (Arrays.binarySearch(getFriends(friend), (int) userId) >= 0) {
+                followers[size++] = friend;
+            }
+        }
+        return Arrays.copyOf(followers, size);
+    }
+
+    private int[] buildPath(int meeting, int source, int target,
+                            Map<Integer, Integer> forwardParents, Map<Integer, Integer> backwardParents) {
+        int[] path = new int[maxPathDepth + 1];
+        int size = 0;
+        for (int user = meeting; user != source; user = forwardParents.get(user)) {
+            path[size++] = user;
+        }
+        path[size++] = source;
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int temp = path[i];
+            path[i] = path[j];
+            path[j] = temp;
+        }
+        for (int user = meeting; user != target; ) {
+            user = backwardParents.get(user);
+            path[size++] = user;
+        }
+        return Arrays.copyOf(path, size);
+    }
+
+    private int[] sample(int[] ids, int limit) {
+        if (ids.length <= limit) {
+            return ids;
+        }
+        int[] sampled = new int[limit];
+        double step = (double) ids.length / limit;
+        double position = ThreadLocalRandom.current().nextDouble(step);
+        for (int i = 0; i < limit; i++) {
+            sampled[i] = ids[(int) position];
+            position += step;
+        }
+        return sampled;
+    }
+
+    //Пересечение отсортированных массивов линейным слиянием
+    public static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] == second[j]) {
+                result[size++] = first[i];
+                i++;
+                j++;
+            } else if (first[i] < second[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int countIntersection(int[] first, int[] second) {
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] == second[j]) {
+                count++;
+                i++;
+                j++;
+            } else if (first[i] < second[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private void insert(Map<Integer, int[]> adjacency, int user, int friend) {
+        int[] current = adjacency.getOrDefault(user, EMPTY);
+        int position = Arrays.binarySearch(current, friend);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        updated[position] = friend;
+        System.arraycopy(current, position, updated, position + 1, current.length - position);
+        adjacency.put(user, updated);
+    }
+
+    private void remove(Map<Integer, int[]> adjacency, int user, int friend) {
+        int[] current = adjacency.getOrDefault(user, EMPTY);
+        int position = Arrays.binarySearch(current, friend);
+        if (position < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            adjacency.remove(user);
+            return;
+        }
+        int[] updated = new int[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        System.arraycopy(current, position + 1, updated, position, current.length - position - 1);
+        adjacency.put(user, updated);
+    }
+
+    //Счётчик int -> int с открытой адресацией, без упаковки ключей в объекты
+    private static class IntCounter {
+        private int[] keys;
+        private int[] counts;
+        private boolean[] used;
+        private int size;
+
+        IntCounter(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            used = new boolean[capacity];
+        }
+
+        void increment(int key) {
+            if (size * 2 >= keys.length) {
+                resize();
+            }
+            int slot = findSlot(keys, used, key);
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            counts[slot]++;
+        }
+
+        //Top-K по убыванию счётчика через min-кучу размера count, при равенстве меньший id выше
+        int[] top(int count) {
+            int[] heap = new int[Math.min(count, size)];
+            int heapSize = 0;
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (!used[slot]) {
+                    continue;
+                }
+                if (heapSize < heap.length) {
+                    heap[heapSize] = slot;
+                    siftUp(heap, heapSize++);
+                } else if (heap.length > 0 && isBetter(slot, heap[0])) {
+                    heap[0] = slot;
+                    siftDown(heap, heapSize);
+                }
+            }
+
+            int[] result = new int[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                result[i] = keys[heap[0]];
+                heap[0] = heap[i];
+                siftDown(heap, i);
+            }
+            return result;
+        }
+
+        private boolean isBetter(int slot, int otherSlot) {
+            return counts[slot] > counts[otherSlot]
+                    || (counts[slot] == counts[otherSlot] && keys[slot] < keys[otherSlot]);
+        }
+
+        private void siftUp(int[] heap, int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (!isBetter(heap[parent], heap[index])) {
+                    return;
+                }
+                swap(heap, parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int[] heap, int heapSize) {
+            int index = 0;
+            while (true) {
+                int worst = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < heapSize && isBetter(heap[worst], heap[left])) {
+                    worst = left;
+                }
+                if (right < heapSize && isBetter(heap[worst], heap[right])) {
+                    worst = right;
+                }
+                if (worst == index) {
+                    return;
+                }
+                swap(heap, index, worst);
+                index = worst;
+            }
+        }
+
+        private void swap(int[] heap, int first, int second) {
+            int temp = heap[first];
+            heap[first] = heap[second];
+            heap[second] = temp;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldCounts = counts;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldUsed[slot]) {
+                    int newSlot = findSlot(keys, used, oldKeys[slot]);
+                    used[newSlot] = true;
+                    keys[newSlot] = oldKeys[slot];
+                    counts[newSlot] = oldCounts[slot];
+                }
+            }
+        }
+
+        private static int findSlot(int[] keys, boolean[] used, int key) {
+            int mask = keys.length - 1;
+            //Хеширование Фибоначчи: слот берётся из старших log2(capacity) бит произведения
+            int slot = (key * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(mask) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
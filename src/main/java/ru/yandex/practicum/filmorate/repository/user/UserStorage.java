@@ -9,6 +9,8 @@ public interface UserStorage {
 
     User addUser(User user);
 
+    void addUsers(List<User> users);
+
     User updateUser(User user);
 
     List<User> getAllUsers();
@@ -21,7 +23,15 @@ public interface UserStorage {
 
     List<User> getUserFriends(Long userId);
 
+    List<User> getUsersByIds(int[] userIds);
+
     boolean removeFriendFromUser(Long userId, Long friendId);
 
+    List<User> getFriendRequests(Long userId, Long afterUserId, int limit);
+
+    List<Long> acceptFriendRequests(Long userId, List<Long> requesterIds);
+
+    List<Long> declineFriendRequests(Long userId, List<Long> requesterIds);
+
     void removeUserById(Long userId);
 }
@@ -7,7 +7,6 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.FriendConfirmationStatus;
@@ -16,13 +15,21 @@ import ru.yandex.practicum.filmorate.model.feed.EventType;
 import ru.yandex.practicum.filmorate.model.feed.Feed;
 import ru.yandex.practicum.filmorate.model.feed.OperationType;
 import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.repository.filmReview.FilmReviewStorage;
+import ru.yandex.practicum.filmorate.repository.insert.EntityInserter;
+import ru.yandex.practicum.filmorate.repository.insert.InsertStatements;
+import ru.yandex.practicum.filmorate.repository.transaction.AfterCommit;
+import ru.yandex.practicum.filmorate.repository.user.FriendGraph;
 import ru.yandex.practicum.filmorate.repository.user.UserStorage;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Component
 @Qualifier("H2UserRepository")
@@ -32,19 +39,23 @@ public class UserRepository implements UserStorage {
 
     private final NamedParameterJdbcTemplate jdbcTemplate;
     private final FeedStorage feedStorage;
+    private final FriendGraph friendGraph;
+    private final EntityInserter entityInserter;
+    private final FilmReviewStorage filmReviewStorage;
 
     @Override
     public User addUser(User user) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate.getJdbcTemplate())
-                .withTableName("users")
-                .usingGeneratedKeyColumns("user_id");
-
-        Long userId = simpleJdbcInsert.executeAndReturnKey(user.mapToDb()).longValue();
-
-        user.setId(userId);
+        user.setId(entityInserter.insert(InsertStatements.USER, user));
         return user;
     }
 
+    //Вставка одним JDBC-пакетом, сгенерированные id проставляются пользователям в порядке списка
+    @Override
+    @Transactional
+    public void addUsers(List<User> users) {
+        entityInserter.insertAll(InsertStatements.USER, users, User::setId);
+    }
+
     @Override
     public User updateUser(User user) {
         String sqlQuery = "UPDATE users " +
@@ -91,150 +102,194 @@ public class UserRepository implements UserStorage {
     @Override
     @Transactional
     public void addFriendToUser(Long userId, Long friendId) {
-        String sqlQueryAddUserRecord = "MERGE INTO user_friend (user_id, friend_id, confirmation_status) " +
-                "VALUES (:userId, :friendId, :confirmed)";
-        String sqlQueryAddFriendRecord = "MERGE INTO user_friend (user_id, friend_id, confirmation_status) " +
-                "VALUES (:friendId, :userId, :pending)";
+        //Обе записи пары пишутся одним оператором
+        String sqlQuery = "MERGE INTO user_friend (user_id, friend_id, confirmation_status) " +
+                "KEY (user_id, friend_id) " +
+                "VALUES (:userId, :friendId, :confirmed), (:friendId, :userId, :pending)";
         SqlParameterSource namedParams = new MapSqlParameterSource()
                 .addValue("userId", userId)
                 .addValue("friendId", friendId)
-                .addValue("confirmed", FriendConfirmationStatus.CONFIRMED.toString())
-                .addValue("pending", FriendConfirmationStatus.WAITING_FOR_APPROVAL.toString());
+                .addValue("confirmed", FriendConfirmationStatus.CONFIRMED.getCode())
+                .addValue("pending", FriendConfirmationStatus.WAITING_FOR_APPROVAL.getCode());
 
-        jdbcTemplate.update(sqlQueryAddUserRecord, namedParams);
-        jdbcTemplate.update(sqlQueryAddFriendRecord, namedParams);
-        Feed feed = Feed.builder()
-                .timestamp(Instant.now().toEpochMilli())
-                .userId(userId)
-                .eventType(EventType.FRIEND)
-                .operation(OperationType.ADD)
-                .entityId(friendId)
-                .build();
-        feedStorage.addEvent(feed);
+        jdbcTemplate.update(sqlQuery, namedParams);
+        AfterCommit.run(() -> {
+            friendGraph.setEdge(userId, friendId, FriendConfirmationStatus.CONFIRMED);
+            friendGraph.setEdge(friendId, userId, FriendConfirmationStatus.WAITING_FOR_APPROVAL);
+        });
+        feedStorage.addEvent(createFriendEvent(userId, friendId, OperationType.ADD));
     }
 
     @Override
     public List<User> getCommonFriends(Long userId, Long otherUserId) {
-        String sqlQuery = "SELECT user_id, user_name, login, email, birthday " +
-                "FROM users " +
-                "WHERE user_id IN " +
-                "(SELECT friend_id FROM " +
-                "(SELECT user_id, friend_id " +
-                "FROM user_friend " +
-                "WHERE user_id = :userId AND confirmation_status = :confirmed " +
-                "UNION ALL " +
-                "SELECT user_id, friend_id " +
-                "FROM user_friend " +
-                "WHERE user_id = :otherUserId AND confirmation_status = :confirmed) " +
-                "GROUP BY FRIEND_ID " +
-                "HAVING COUNT(USER_ID) > 1)";
-        SqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId)
-                .addValue("otherUserId", otherUserId)
-                .addValue("confirmed", FriendConfirmationStatus.CONFIRMED.toString());
-
-        try {
-            return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToUser);
-        } catch (EmptyResultDataAccessException e) {
-            return List.of();
-        }
+        return getUsersByIds(friendGraph.getCommonFriends(userId, otherUserId));
     }
 
     @Override
     public List<User> getUserFriends(Long userId) {
-        String sqlQuery = "SELECT user_id, user_name, login, email, birthday " +
-                "FROM users " +
-                "WHERE user_id IN " +
-                "(SELECT friend_id " +
-                "FROM user_friend " +
-                "WHERE user_id = :userId AND confirmation_status = :confirmed)";
-        SqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId)
-                .addValue("confirmed", FriendConfirmationStatus.CONFIRMED.toString());
+        return getUsersByIds(friendGraph.getFriends(userId));
+    }
 
-        try {
-            return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToUser);
-        } catch (EmptyResultDataAccessException e) {
+    @Override
+    public List<User> getUsersByIds(int[] userIds) {
+        if (userIds.length == 0) {
             return List.of();
         }
+        String sqlQuery = "SELECT user_id, user_name, login, email, birthday " +
+                "FROM users " +
+                "WHERE user_id IN (:userIds) " +
+                "ORDER BY user_id";
+        List<Integer> userIdsList = Arrays.stream(userIds)
+                .boxed()
+                .collect(Collectors.toList());
+        SqlParameterSource namedParams = new MapSqlParameterSource("userIds", userIdsList);
+
+        return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToUser);
     }
 
+    /*
+    Переход состояния дружбы выполняется одним условным MERGE по паре записей:
+    - обе записи CONFIRMED: запись пользователя переводится в WAITING_FOR_APPROVAL (изменена 1 строка);
+    - запись пользователя CONFIRMED, запись друга WAITING_FOR_APPROVAL: удаляются обе записи (2 строки);
+    - иначе ничего не меняется (0 строк).
+     */
     @Override
+    @Transactional
     public boolean removeFriendFromUser(Long userId, Long friendId) {
-        //Если друг не добавлял пользователя в друзья (статус WAITING_FOR_APPROVAL)
-        String deleteBothRecordsSqlQuery = "DELETE FROM user_friend " +
-                "WHERE (user_id = :userId AND friend_id = :friendId)" +
-                "OR " +
-                "(user_id = :friendId AND friend_id = :userId)";
-        //Если друг добавил пользователя в друзья (статус CONFIRMED)
-        String changeFriendStatusForPending = "UPDATE user_friend " +
-                "SET confirmation_status = :pending " +
-                "WHERE user_id = :userId AND friend_id= :friendId";
+        String sqlQuery = "MERGE INTO user_friend AS uf " +
+                "USING (SELECT friend_record.confirmation_status AS friend_status " +
+                "FROM user_friend AS user_record " +
+                "JOIN user_friend AS friend_record ON friend_record.user_id = user_record.friend_id " +
+                "AND friend_record.friend_id = user_record.user_id " +
+                "WHERE user_record.user_id = :userId AND user_record.friend_id = :friendId " +
+                "AND user_record.confirmation_status = :confirmed) AS pair " +
+                "ON (uf.user_id = :userId AND uf.friend_id = :friendId) " +
+                "OR (uf.user_id = :friendId AND uf.friend_id = :userId) " +
+                "WHEN MATCHED AND pair.friend_status = :confirmed AND uf.user_id = :userId THEN " +
+                "UPDATE SET confirmation_status = :pending " +
+                "WHEN MATCHED AND pair.friend_status = :pending THEN DELETE";
         SqlParameterSource namedParams = new MapSqlParameterSource()
                 .addValue("userId", userId)
                 .addValue("friendId", friendId)
-                .addValue("pending", FriendConfirmationStatus.WAITING_FOR_APPROVAL.toString());
+                .addValue("confirmed", FriendConfirmationStatus.CONFIRMED.getCode())
+                .addValue("pending", FriendConfirmationStatus.WAITING_FOR_APPROVAL.getCode());
 
-        Optional<FriendConfirmationStatus> currentUserFriendStatus = getFriendshipStatus(userId, friendId);
-        Optional<FriendConfirmationStatus> currentFriendUserStatus = getFriendshipStatus(friendId, userId);
-        Feed feed = Feed.builder()
-                .timestamp(Instant.now().toEpochMilli())
-                .userId(userId)
-                .eventType(EventType.FRIEND)
-                .operation(OperationType.REMOVE)
-                .entityId(friendId)
-                .build();
-        if (
-                (currentUserFriendStatus.isEmpty() || currentFriendUserStatus.isEmpty()) ||
-                        currentUserFriendStatus.get().equals(FriendConfirmationStatus.WAITING_FOR_APPROVAL)
-        ) {
+        int changedRows = jdbcTemplate.update(sqlQuery, namedParams);
+        if (changedRows == 0) {
             return false;
         }
-
-        if (currentFriendUserStatus.get().equals(FriendConfirmationStatus.CONFIRMED) &&
-                currentUserFriendStatus.get().equals(FriendConfirmationStatus.CONFIRMED)) {
-            feedStorage.addEvent(feed);
-            return jdbcTemplate.update(changeFriendStatusForPending, namedParams) > 0;
+        if (changedRows == 1) {
+            AfterCommit.run(() -> friendGraph.setEdge(userId, friendId, FriendConfirmationStatus.WAITING_FOR_APPROVAL));
+        } else {
+            AfterCommit.run(() -> {
+                friendGraph.removeEdge(userId, friendId);
+                friendGraph.removeEdge(friendId, userId);
+            });
         }
+        feedStorage.addEvent(createFriendEvent(userId, friendId, OperationType.REMOVE));
+        return true;
+    }
+
+    //Входящие заявки - собственные записи пользователя в статусе WAITING_FOR_APPROVAL, страница по friend_id
+    @Override
+    public List<User> getFriendRequests(Long userId, Long afterUserId, int limit) {
+        String sqlQuery = "SELECT u.user_id, u.user_name, u.login, u.email, u.birthday " +
+                "FROM user_friend AS uf " +
+                "JOIN users AS u ON uf.friend_id = u.user_id " +
+                "WHERE uf.user_id = :userId AND uf.confirmation_status = :pending AND uf.friend_id > :afterUserId " +
+                "ORDER BY uf.friend_id " +
+                "LIMIT :limit";
+        SqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("pending", FriendConfirmationStatus.WAITING_FOR_APPROVAL.getCode())
+                .addValue("afterUserId", afterUserId)
+                .addValue("limit", limit);
+
+        return jdbcTemplate.query(sqlQuery, namedParams, this::mapRowToUser);
+    }
 
-        if (currentUserFriendStatus.get().equals(FriendConfirmationStatus.CONFIRMED) &&
-                currentFriendUserStatus.get().equals(FriendConfirmationStatus.WAITING_FOR_APPROVAL)) {
-            feedStorage.addEvent(feed);
-            return jdbcTemplate.update(deleteBothRecordsSqlQuery, namedParams) > 0;
+    @Override
+    @Transactional
+    public List<Long> acceptFriendRequests(Long userId, List<Long> requesterIds) {
+        String sqlQuery = "UPDATE user_friend " +
+                "SET confirmation_status = :confirmed " +
+                "WHERE user_id = :userId AND friend_id = :friendId AND confirmation_status = :pending";
+
+        int[] updatedRows = jdbcTemplate.batchUpdate(sqlQuery, createFriendRequestParams(userId, requesterIds));
+        List<Long> acceptedIds = collectChanged(requesterIds, updatedRows);
+        for (Long requesterId : acceptedIds) {
+            feedStorage.addEvent(createFriendEvent(userId, requesterId, OperationType.ADD));
         }
+        AfterCommit.run(() -> acceptedIds.forEach(requesterId ->
+                friendGraph.setEdge(userId, requesterId, FriendConfirmationStatus.CONFIRMED)));
+        return acceptedIds;
+    }
 
-        return false;
+    //Отклонение удаляет обе записи пары; запись отправителя удаляется первой, пока заявка ещё существует
+    @Override
+    @Transactional
+    public List<Long> declineFriendRequests(Long userId, List<Long> requesterIds) {
+        String deleteRequesterRecordsSqlQuery = "DELETE FROM user_friend " +
+                "WHERE user_id = :friendId AND friend_id = :userId " +
+                "AND EXISTS (SELECT 1 FROM user_friend AS request " +
+                "WHERE request.user_id = :userId AND request.friend_id = :friendId " +
+                "AND request.confirmation_status = :pending)";
+        String deleteRequestsSqlQuery = "DELETE FROM user_friend " +
+                "WHERE user_id = :userId AND friend_id = :friendId AND confirmation_status = :pending";
+        SqlParameterSource[] namedParams = createFriendRequestParams(userId, requesterIds);
+
+        jdbcTemplate.batchUpdate(deleteRequesterRecordsSqlQuery, namedParams);
+        int[] deletedRows = jdbcTemplate.batchUpdate(deleteRequestsSqlQuery, namedParams);
+        List<Long> declinedIds = collectChanged(requesterIds, deletedRows);
+        AfterCommit.run(() -> declinedIds.forEach(requesterId -> {
+            friendGraph.removeEdge(userId, requesterId);
+            friendGraph.removeEdge(requesterId, userId);
+        }));
+        return declinedIds;
     }
 
+    //Оценки отзывов снимаются в той же транзакции, иначе каскадное удаление оставило бы счётчики отзывов
     @Override
+    @Transactional
     public void removeUserById(Long userId) {
+        filmReviewStorage.removeUserRatings(userId);
         String sqlQuery = "DELETE FROM users " +
                 "WHERE user_id = :userId";
         SqlParameterSource namedParams = new MapSqlParameterSource()
                 .addValue("userId", userId);
 
         jdbcTemplate.update(sqlQuery, namedParams);
-
+        AfterCommit.run(() -> friendGraph.removeUser(userId));
     }
 
-    private Optional<FriendConfirmationStatus> getFriendshipStatus(Long userId, Long otherUserId) {
-        String sqlQuery = "SELECT confirmation_status " +
-                "FROM user_friend " +
-                "WHERE (user_id = :userId AND friend_id = :otherUserId)";
-        SqlParameterSource namedParams = new MapSqlParameterSource()
-                .addValue("userId", userId)
-                .addValue("otherUserId", otherUserId);
-        String status;
+    private SqlParameterSource[] createFriendRequestParams(Long userId, List<Long> requesterIds) {
+        return requesterIds.stream()
+                .map(requesterId -> new MapSqlParameterSource()
+                        .addValue("userId", userId)
+                        .addValue("friendId", requesterId)
+                        .addValue("confirmed", FriendConfirmationStatus.CONFIRMED.getCode())
+                        .addValue("pending", FriendConfirmationStatus.WAITING_FOR_APPROVAL.getCode()))
+                .toArray(SqlParameterSource[]::new);
+    }
 
-        try {
-            status = jdbcTemplate.queryForObject(sqlQuery, namedParams, String.class);
-        } catch (EmptyResultDataAccessException e) {
-            return Optional.empty();
+    private List<Long> collectChanged(List<Long> ids, int[] changedRows) {
+        List<Long> changedIds = new ArrayList<>();
+        for (int i = 0; i < changedRows.length; i++) {
+            if (changedRows[i] > 0) {
+                changedIds.add(ids.get(i));
+            }
         }
+        return changedIds;
+    }
 
-        FriendConfirmationStatus enumStatus = FriendConfirmationStatus.valueOf(status);
-
-        return Optional.of(enumStatus);
+    private Feed createFriendEvent(Long userId, Long friendId, OperationType operation) {
+        return Feed.builder()
+                .timestamp(Instant.now().toEpochMilli())
+                .userId(userId)
+                .eventType(EventType.FRIEND)
+                .operation(operation)
+                .entityId(friendId)
+                .build();
     }
 
     private User mapRowToUser(ResultSet resultSet, int rowNum) throws SQLException {
@@ -26,6 +26,11 @@ public class InMemoryUserStorage implements UserStorage {
         return user;
     }
 
+    @Override
+    public void addUsers(List<User> users) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public User updateUser(User user) {
         users.put(user.getId(), user);
@@ -57,11 +62,31 @@ public class InMemoryUserStorage implements UserStorage {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<User> getUsersByIds(int[] userIds) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public boolean removeFriendFromUser(Long userId, Long friendId) {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<User> getFriendRequests(Long userId, Long afterUserId, int limit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Long> acceptFriendRequests(Long userId, List<Long> requesterIds) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<Long> declineFriendRequests(Long userId, List<Long> requesterIds) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void removeUserById(Long userId) {
         throw new UnsupportedOperationException();
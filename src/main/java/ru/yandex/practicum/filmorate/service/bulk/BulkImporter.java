@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.service.bulk;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
+import ru.yandex.practicum.filmorate.exception.InvalidFieldsException;
+import ru.yandex.practicum.filmorate.exception.NotExistsException;
+import ru.yandex.practicum.filmorate.model.BulkImportResult;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/*
+Массовый импорт: JSON-массив читается потоковым парсером по одному элементу,
+валидные элементы копятся в пакет и сохраняются пакетами по batchSize,
+результаты по каждому элементу сразу пишутся в ответ. Память не зависит от размера массива.
+Ошибки валидации пишутся раньше результатов пакета, поэтому в каждом результате указан индекс элемента.
+ */
+@Slf4j
+public abstract class BulkImporter<T> {
+
+    private final Class<T> itemClass;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+
+    protected BulkImporter(Class<T> itemClass, Validator validator, ObjectMapper objectMapper, int batchSize) {
+        this.itemClass = itemClass;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+    }
+
+    public void importItems(InputStream input, OutputStream output) throws IOException {
+        long start = System.nanoTime();
+        JsonParser parser = objectMapper.getFactory().createParser(input);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IncorrectParameterException("body", "Should be JSON array");
+        }
+
+        int imported = 0;
+        int index = 0;
+        List<T> batch = new ArrayList<>(batchSize);
+        List<Integer> batchIndexes = new ArrayList<>(batchSize);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            generator.writeStartArray();
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                String error = null;
+                if (token == JsonToken.START_OBJECT) {
+                    try {
+                        T item = parser.readValueAs(itemClass);
+                        error = validate(item);
+                        if (error == null) {
+                            batch.add(item);
+                            batchIndexes.add(index);
+                        }
+                    } catch (JsonProcessingException e) {
+                        error = e.getOriginalMessage();
+                        skipRestOfItem(parser);
+                    }
+                } else {
+                    parser.skipChildren();
+                    error = "Should be JSON object";
+                }
+                if (error != null) {
+                    generator.writeObject(BulkImportResult.builder().index(index).error(error).build());
+                }
+                index++;
+
+                if (batch.size() == batchSize) {
+                    imported += flush(batch, batchIndexes, generator);
+                }
+            }
+            imported += flush(batch, batchIndexes, generator);
+            generator.writeEndArray();
+        }
+        log.info("Bulk import of {} finished in {} ms: {} of {} imported", itemClass.getSimpleName(),
+                (System.nanoTime() - start) / 1_000_000, imported, index);
+    }
+
+    //Проверки элемента помимо аннотаций; ошибка сообщается через InvalidFieldsException или NotExistsException
+    protected abstract void checkItem(T item);
+
+    //Сохраняет пакет одной транзакцией и проставляет элементам сгенерированные id
+    protected abstract void saveBatch(List<T> batch);
+
+    protected abstract Long getId(T item);
+
+    private String validate(T item) {
+        Set<ConstraintViolation<T>> violations = validator.validate(item);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                    .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+        }
+        try {
+            checkItem(item);
+        } catch (InvalidFieldsException | NotExistsException e) {
+            return e.getMessage();
+        } catch (RuntimeException e) {
+            //Ответ уже пишется потоком, поэтому непредвиденная ошибка отмечается у элемента, а не обрывает импорт
+            log.warn("Failed to check {} at bulk import: {}", itemClass.getSimpleName(), e.toString());
+            return "Invalid item";
+        }
+        return null;
+    }
+
+    //Элемент читается сразу в объект, поэтому после ошибки маппинга его остаток пропускается до следующего элемента
+    private void skipRestOfItem(JsonParser parser) throws IOException {
+        JsonStreamContext context = parser.getParsingContext();
+        while (!(context.inArray() && context.getParent().inRoot())) {
+            if (parser.nextToken() == null) {
+                return;
+            }
+            context = parser.getParsingContext();
+        }
+    }
+
+    //Ошибка базы данных отмечается у всех элементов пакета
+    private int flush(List<T> batch, List<Integer> batchIndexes, JsonGenerator generator) throws IOException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int imported = batch.size();
+        String error = null;
+        try {
+            saveBatch(batch);
+        } catch (DataAccessException e) {
+            log.error("Failed to save {} batch: {}", itemClass.getSimpleName(), e.getMessage());
+            error = "Batch insert failed";
+            imported = 0;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            generator.writeObject(BulkImportResult.builder()
+                    .index(batchIndexes.get(i))
+                    .id(error == null ? getId(batch.get(i)) : null)
+                    .error(error)
+                    .build());
+        }
+        generator.flush();
+        batch.clear();
+        batchIndexes.clear();
+        return imported;
+    }
+}
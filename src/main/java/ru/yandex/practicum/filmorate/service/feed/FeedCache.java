@@ -0,0 +1,143 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.feed.EventType;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Последние feed.cache.capacity событий активных пользователей в памяти. Буфер загружается из FEED при первом
+чтении и дополняется событиями из outbox. Всего хранится не больше feed.cache.max-events событий:
+пользователи сверх этого вытесняются по LRU. В БД уходят только запросы глубже буфера.
+Буфер загружается вне общего монитора: раздача и чтения других пользователей не ждут БД и архив
+ */
+@Slf4j
+@Component
+public class FeedCache implements FeedEventListener {
+
+    private final FeedStorage feedStorage;
+    private final int capacity;
+    private final Map<Long, FeedRing> feeds;
+    private final Map<Long, Loading> loadings = new HashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FeedCache(FeedStorage feedStorage,
+                     @Value("${feed.cache.capacity}") int capacity,
+                     @Value("${feed.cache.max-events}") int maxEvents) {
+        this.feedStorage = feedStorage;
+        this.capacity = capacity;
+        int maxUsers = Math.max(1, maxEvents / capacity);
+        this.feeds = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, FeedRing> eldest) {
+                return size() > maxUsers;
+            }
+        });
+    }
+
+    @Override
+    public synchronized void onEvents(List<Feed> events) {
+        for (Feed event : events) {
+            FeedRing feed = feeds.get(event.getUserId());
+            if (feed != null) {
+                feed.add(event);
+                continue;
+            }
+            Loading loading = loadings.get(event.getUserId());
+            if (loading != null) {
+                loading.delivered.add(event);
+            }
+        }
+    }
+
+    //Буфер пользователя с удалёнными событиями перечитывается целиком, чтобы не потерять признак полноты
+    @Override
+    public synchronized void onEventsRemoved(List<Feed> events) {
+        for (Feed event : events) {
+            feeds.remove(event.getUserId());
+            Loading loading = loadings.get(event.getUserId());
+            if (loading != null) {
+                loading.stale = true;
+            }
+        }
+    }
+
+    public List<Feed> getUserFeed(Long userId, Long beforeEventId, int limit, EventType eventType) {
+        FeedRing feed = feeds.get(userId);
+        if (feed == null) {
+            feed = loadFeed(userId);
+        }
+        List<Feed> page = feed.getPage(beforeEventId, limit,
+                event -> eventType == null || event.getEventType() == eventType);
+        if (page.size() == limit || feed.isComplete()) {
+            hits.increment();
+            return page;
+        }
+        misses.increment();
+        return feedStorage.getUserFeed(userId, beforeEventId, limit, eventType);
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new TreeMap<>();
+        stats.put("users", (long) feeds.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+
+    /*
+    Под монитором только регистрация загрузки и её завершение. События, разосланные во время чтения FEED,
+    копятся в загрузке и добавляются в буфер после прочитанных; FeedRing отбрасывает уже прочитанные по eventId.
+    Остальные читатели того же пользователя ждут ту же загрузку
+     */
+    private FeedRing loadFeed(Long userId) {
+        Loading loading;
+        boolean owner;
+        synchronized (this) {
+            FeedRing feed = feeds.get(userId);
+            if (feed != null) {
+                return feed;
+            }
+            owner = !loadings.containsKey(userId);
+            loading = loadings.computeIfAbsent(userId, id -> new Loading());
+        }
+        if (!owner) {
+            return loading.feed.join();
+        }
+        try {
+            List<Feed> latest = feedStorage.getUserFeed(userId, null, capacity, null);
+            FeedRing feed = new FeedRing(capacity);
+            feed.addAll(latest);
+            feed.setComplete(latest.size() < capacity);
+            synchronized (this) {
+                loadings.remove(userId);
+                feed.addAll(loading.delivered);
+                //Пока шла загрузка, часть событий удалили: буфер перечитает следующее чтение
+                if (!loading.stale) {
+                    feeds.put(userId, feed);
+                }
+            }
+            loading.feed.complete(feed);
+            return feed;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loadings.remove(userId);
+            }
+            loading.feed.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static class Loading {
+        private final CompletableFuture<FeedRing> feed = new CompletableFuture<>();
+        private final List<Feed> delivered = new ArrayList<>();
+        private boolean stale;
+    }
+}
@@ -0,0 +1,106 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.feed.CompactionBatch;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.service.metrics.StageMetrics;
+import ru.yandex.practicum.filmorate.service.metrics.StageStats;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+Хранение ленты: гасящие друг друга цепочки событий старше feed.retention.compaction-window-days удаляются,
+события старше feed.retention.archive-after-days переносятся в архив. Длительность каждого шага учитывается.
+После каждого пакета удалённые из FEED события передаются слушателям, чтобы кэши ленты их не отдавали
+ */
+@Slf4j
+@Component
+public class FeedCompactor {
+
+    public static final String COMPACTION_STAGE = "compaction";
+    public static final String ARCHIVE_STAGE = "archive";
+
+    private final FeedStorage feedStorage;
+    private final List<FeedEventListener> listeners;
+    private final long compactionWindowMs;
+    private final long archiveAfterMs;
+    private final int batchSize;
+    private final StageMetrics stageMetrics;
+    //События REMOVE до этого eventId уже просмотрены; после перезапуска лента просматривается с начала
+    private long compactedEventId;
+
+    public FeedCompactor(FeedStorage feedStorage,
+                         List<FeedEventListener> listeners,
+                         StageMetrics stageMetrics,
+                         @Value("${feed.retention.compaction-window-days}") long compactionWindowDays,
+                         @Value("${feed.retention.archive-after-days}") long archiveAfterDays,
+                         @Value("${feed.retention.batch-size}") int batchSize) {
+        this.feedStorage = feedStorage;
+        this.listeners = listeners;
+        this.stageMetrics = stageMetrics;
+        this.compactionWindowMs = TimeUnit.DAYS.toMillis(compactionWindowDays);
+        this.archiveAfterMs = TimeUnit.DAYS.toMillis(archiveAfterDays);
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${feed.retention.interval-ms}", initialDelayString = "${feed.retention.interval-ms}")
+    public void applyRetention() {
+        long now = System.currentTimeMillis();
+        compact(now - compactionWindowMs);
+        archive(now - archiveAfterMs);
+    }
+
+    public synchronized int compact(long olderThan) {
+        long start = System.nanoTime();
+        int removed = 0;
+        CompactionBatch batch;
+        do {
+            batch = feedStorage.compactCancelledEvents(compactedEventId, olderThan, batchSize);
+            compactedEventId = batch.getLastEventId();
+            removed += batch.getRemovedEvents().size();
+            notifyListeners(batch.getRemovedEvents());
+        } while (batch.getScanned() == batchSize);
+        long duration = System.nanoTime() - start;
+        stageMetrics.record(StageMetrics.RETENTION, COMPACTION_STAGE, duration);
+        log.info("Feed compaction removed {} cancelled event(s) in {} ms", removed, duration / 1_000_000);
+        return removed;
+    }
+
+    public synchronized int archive(long olderThan) {
+        long start = System.nanoTime();
+        int archived = 0;
+        List<Feed> moved;
+        do {
+            moved = feedStorage.archiveEvents(olderThan, batchSize);
+            archived += moved.size();
+            notifyListeners(moved);
+        } while (moved.size() == batchSize);
+        long duration = System.nanoTime() - start;
+        stageMetrics.record(StageMetrics.RETENTION, ARCHIVE_STAGE, duration);
+        log.info("Feed archiving moved {} event(s) in {} ms", archived, duration / 1_000_000);
+        return archived;
+    }
+
+    public Map<String, StageStats> getStats() {
+        return stageMetrics.getStats(StageMetrics.RETENTION);
+    }
+
+    private void notifyListeners(List<Feed> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (FeedEventListener listener : listeners) {
+            try {
+                listener.onEventsRemoved(events);
+            } catch (RuntimeException e) {
+                log.error("Feed event listener {} failed: {}", listener.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+}
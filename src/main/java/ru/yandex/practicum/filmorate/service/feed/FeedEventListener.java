@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+
+import java.util.List;
+
+//Получатель событий, перенесённых из outbox в ленту; события приходят по возрастанию eventId
+public interface FeedEventListener {
+
+    void onEvents(List<Feed> events);
+
+    //События удалены из FEED уплотнением или перенесены в архив; вызывается после фиксации каждого пакета
+    default void onEventsRemoved(List<Feed> events) {
+    }
+}
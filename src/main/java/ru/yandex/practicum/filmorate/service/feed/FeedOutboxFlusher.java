@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+
+import java.util.List;
+
+/*
+Фоновый перенос событий из outbox в ленту пакетами по feed.outbox.batch-size.
+Вызывается по расписанию и перед чтением ленты пользователя, если в outbox есть его события,
+чтобы пользователь сразу видел свои события.
+После фиксации каждого пакета события передаются слушателям в порядке eventId
+ */
+@Slf4j
+@Component
+public class FeedOutboxFlusher {
+
+    private final FeedStorage feedStorage;
+    private final List<FeedEventListener> listeners;
+    private final int batchSize;
+
+    public FeedOutboxFlusher(FeedStorage feedStorage,
+                             List<FeedEventListener> listeners,
+                             @Value("${feed.outbox.batch-size}") int batchSize) {
+        this.feedStorage = feedStorage;
+        this.listeners = listeners;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${feed.outbox.flush-interval-ms}")
+    public synchronized void flush() {
+        List<Feed> events;
+        int flushed = 0;
+        do {
+            events = feedStorage.moveOutboxToFeed(batchSize);
+            flushed += events.size();
+            notifyListeners(events);
+        } while (events.size() == batchSize);
+        if (flushed > 0) {
+            log.debug("Moved {} feed event(s) from outbox", flushed);
+        }
+    }
+
+    //Чтение ленты пользователя, у которого ничего не ждёт в outbox, не ждёт монитор и не открывает пишущую транзакцию
+    public void flushFor(Long userId) {
+        if (feedStorage.hasOutboxEvents(userId)) {
+            flush();
+        }
+    }
+
+    private void notifyListeners(List<Feed> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        for (FeedEventListener listener : listeners) {
+            try {
+                listener.onEvents(events);
+            } catch (RuntimeException e) {
+                log.error("Feed event listener {} failed: {}", listener.getClass().getSimpleName(), e.getMessage());
+            }
+        }
+    }
+}
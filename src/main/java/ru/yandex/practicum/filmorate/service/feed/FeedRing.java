@@ -0,0 +1,94 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/*
+Кольцевой буфер последних событий; при переполнении вытесняется самое старое.
+Признак complete означает, что в буфере вся история, и за более старыми событиями обращаться некуда
+ */
+public class FeedRing {
+
+    private final Feed[] events;
+    private int next;
+    private int size;
+    private boolean complete = true;
+
+    public FeedRing(int capacity) {
+        this.events = new Feed[capacity];
+    }
+
+    //События, не новее последнего в буфере, пропускаются: так повторная доставка не создаёт дублей
+    public synchronized void add(Feed feed) {
+        if (size > 0 && events[index(size - 1)].getEventId() >= feed.getEventId()) {
+            return;
+        }
+        if (size == events.length) {
+            complete = false;
+        }
+        events[next] = feed;
+        next = (next + 1) % events.length;
+        size = Math.min(size + 1, events.length);
+    }
+
+    public synchronized void addAll(List<Feed> feeds) {
+        feeds.forEach(this::add);
+    }
+
+    //До limit последних событий в хронологическом порядке
+    public synchronized List<Feed> getLatest(int limit) {
+        int count = Math.min(limit, size);
+        List<Feed> result = new ArrayList<>(count);
+        for (int i = size - count; i < size; i++) {
+            result.add(events[index(i)]);
+        }
+        return result;
+    }
+
+    //До limit последних событий старше beforeEventId (если задан), прошедших фильтр, в хронологическом порядке
+    public synchronized List<Feed> getPage(Long beforeEventId, int limit, Predicate<Feed> filter) {
+        LinkedList<Feed> page = new LinkedList<>();
+        for (int i = size - 1; i >= 0 && page.size() < limit; i--) {
+            Feed feed = events[index(i)];
+            if ((beforeEventId == null || feed.getEventId() < beforeEventId) && filter.test(feed)) {
+                page.addFirst(feed);
+            }
+        }
+        return new ArrayList<>(page);
+    }
+
+    //Удаляет события, прошедшие фильтр; порядок остальных сохраняется
+    public synchronized void removeIf(Predicate<Feed> filter) {
+        List<Feed> kept = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Feed feed = events[index(i)];
+            if (!filter.test(feed)) {
+                kept.add(feed);
+            }
+        }
+        Arrays.fill(events, null);
+        for (int i = 0; i < kept.size(); i++) {
+            events[i] = kept.get(i);
+        }
+        size = kept.size();
+        next = size % events.length;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    public synchronized void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    //Позиция i-го по старшинству события
+    private int index(int i) {
+        return (next - size + i + events.length) % events.length;
+    }
+}
@@ -2,20 +2,69 @@ package ru.yandex.practicum.filmorate.service.feed;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
 import ru.yandex.practicum.filmorate.model.feed.*;
-import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.service.metrics.StageStats;
 import ru.yandex.practicum.filmorate.service.validator.UserFieldsValidator;
 
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
 public class FeedService {
-    private final FeedStorage feedStorage;
+    private final FeedOutboxFlusher feedOutboxFlusher;
+    private final TimelineFanout timelineFanout;
+    private final FeedStreamHub feedStreamHub;
+    private final FeedCache feedCache;
+    private final FeedCompactor feedCompactor;
     private final UserFieldsValidator userFieldsValidator;
 
-    public List<Feed> getFeedListById(Long userId) {
+    public List<Feed> getFeedListById(Long userId, Long beforeEventId, int limit, String eventType) {
         userFieldsValidator.checkIfPresentById(userId);
-        return feedStorage.getUserFeed(userId);
+        feedOutboxFlusher.flushFor(userId);
+        return feedCache.getUserFeed(userId, beforeEventId, limit, parseEventType(eventType));
+    }
+
+    public Map<String, StageStats> getRetentionStats() {
+        return feedCompactor.getStats();
+    }
+
+    public Map<String, Long> getCacheStats() {
+        return feedCache.getStats();
+    }
+
+    public SseEmitter streamFeed(Long userId) {
+        userFieldsValidator.checkIfPresentById(userId);
+        return feedStreamHub.subscribe(userId);
+    }
+
+    public Map<String, Long> getStreamStats() {
+        return feedStreamHub.getStats();
+    }
+
+    /*
+    Хронология отдаётся из колец как есть, без переноса outbox: события друзей появляются в ней не позже чем
+    через feed.outbox.flush-interval-ms после фиксации, зато чтения не ждут монитор FeedOutboxFlusher
+     */
+    public List<Feed> getTimeline(Long userId, int limit) {
+        userFieldsValidator.checkIfPresentById(userId);
+        return timelineFanout.getTimeline(userId, limit);
+    }
+
+    public Map<String, StageStats> getTimelineStats() {
+        return timelineFanout.getStats();
+    }
+
+    private EventType parseEventType(String eventType) {
+        if (eventType == null) {
+            return null;
+        }
+        try {
+            return EventType.valueOf(eventType.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IncorrectParameterException("eventType", "Should be LIKE, FRIEND or REVIEW");
+        }
     }
 }
@@ -0,0 +1,186 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Рассылка новых событий ленты подписчикам SSE. Соединение держит асинхронный SseEmitter, а не поток Tomcat;
+отправку выполняет небольшой пул feed.stream.threads. У каждого подписчика свой буфер на feed.stream.buffer-size
+событий: при переполнении вытесняется самое старое, а подписчик, потерявший больше feed.stream.max-dropped
+событий, отключается как медленный.
+ */
+@Slf4j
+@Component
+public class FeedStreamHub implements FeedEventListener {
+
+    private static final String EVENT_NAME = "feed";
+
+    private final Map<Long, List<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final int bufferSize;
+    private final int maxDropped;
+    private final long timeoutMs;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder disconnected = new LongAdder();
+
+    public FeedStreamHub(@Value("${feed.stream.buffer-size}") int bufferSize,
+                         @Value("${feed.stream.max-dropped}") int maxDropped,
+                         @Value("${feed.stream.timeout-ms}") long timeoutMs,
+                         @Value("${feed.stream.threads}") int threads) {
+        this.bufferSize = bufferSize;
+        this.maxDropped = maxDropped;
+        this.timeoutMs = timeoutMs;
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    public SseEmitter subscribe(Long userId) {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        subscribers.computeIfAbsent(userId, id -> new CopyOnWriteArrayList<>()).add(subscriber);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        return emitter;
+    }
+
+    @Override
+    public void onEvents(List<Feed> events) {
+        for (Feed event : events) {
+            List<Subscriber> userSubscribers = subscribers.get(event.getUserId());
+            if (userSubscribers == null) {
+                continue;
+            }
+            for (Subscriber subscriber : userSubscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    //Комментарий-пульс раз в feed.stream.heartbeat-ms выявляет разорванные соединения; отправка идёт в пуле,
+    //чтобы медленный клиент не задерживал общий поток планировщика
+    @Scheduled(fixedDelayString = "${feed.stream.heartbeat-ms}")
+    public void sendHeartbeat() {
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(subscriber ->
+                executor.execute(() -> subscriber.send(SseEmitter.event().comment("heartbeat")))));
+    }
+
+    public int getSubscribersCount() {
+        return subscribers.values().stream()
+                .mapToInt(List::size)
+                .sum();
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new TreeMap<>();
+        stats.put("subscribers", (long) getSubscribersCount());
+        stats.put("delivered", delivered.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("disconnected", disconnected.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        subscribers.values().forEach(userSubscribers -> userSubscribers.forEach(subscriber -> {
+            try {
+                subscriber.emitter.complete();
+            } catch (RuntimeException e) {
+                //Контейнер при остановке мог уже закрыть асинхронный запрос
+                log.debug("Feed stream of user {} was already closed: {}", subscriber.userId, e.toString());
+            }
+        }));
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscribers.computeIfPresent(subscriber.userId, (id, userSubscribers) -> {
+            userSubscribers.remove(subscriber);
+            return userSubscribers.isEmpty() ? null : userSubscribers;
+        });
+    }
+
+    private class Subscriber {
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final Deque<Feed> buffer = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private int droppedCount;
+
+        Subscriber(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void offer(Feed event) {
+            boolean slow;
+            synchronized (buffer) {
+                if (buffer.size() == bufferSize) {
+                    buffer.pollFirst();
+                    droppedCount++;
+                    dropped.increment();
+                }
+                buffer.addLast(event);
+                slow = droppedCount > maxDropped;
+            }
+            if (slow) {
+                log.warn("Feed stream subscriber of user {} is too slow and was disconnected", userId);
+                disconnect();
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        //Отправка идёт одной задачей на подписчика, поэтому порядок событий сохраняется
+        private void drain() {
+            while (true) {
+                Feed event;
+                synchronized (buffer) {
+                    event = buffer.pollFirst();
+                    if (event == null) {
+                        draining.set(false);
+                        return;
+                    }
+                }
+                if (!send(SseEmitter.event().id(String.valueOf(event.getEventId())).name(EVENT_NAME).data(event))) {
+                    return;
+                }
+                delivered.increment();
+            }
+        }
+
+        boolean send(SseEmitter.SseEventBuilder event) {
+            try {
+                synchronized (emitter) {
+                    emitter.send(event);
+                }
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                disconnect();
+                return false;
+            }
+        }
+
+        private void disconnect() {
+            unsubscribe(this);
+            disconnected.increment();
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.service.feed;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.feed.EventType;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.repository.user.FriendGraph;
+import ru.yandex.practicum.filmorate.service.metrics.StageMetrics;
+import ru.yandex.practicum.filmorate.service.metrics.StageStats;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/*
+Ленты активности друзей с раздачей при записи: событие сразу добавляется в буферы всех,
+у кого автор в подтверждённых друзьях. События пользователей с числом подписчиков больше
+feed.timeline.hub-followers не раздаются, а хранятся в буфере автора и подмешиваются при чтении.
+Буфер пользователя загружается из FEED при первом чтении и вытесняется по LRU.
+ */
+@Slf4j
+@Component
+public class TimelineFanout implements FeedEventListener {
+
+    public static final String FANOUT_STAGE = "fanout";
+    public static final String LAG_STAGE = "fanout-lag";
+    public static final String READ_STAGE = "fanout-on-read";
+
+    private final FeedStorage feedStorage;
+    private final FriendGraph friendGraph;
+    private final int capacity;
+    private final int hubFollowers;
+    private final StageMetrics stageMetrics;
+    private final Map<Integer, FeedRing> timelines;
+    private final Map<Integer, FeedRing> hubEvents = new ConcurrentHashMap<>();
+
+    public TimelineFanout(FeedStorage feedStorage,
+                          FriendGraph friendGraph,
+                          StageMetrics stageMetrics,
+                          @Value("${feed.timeline.capacity}") int capacity,
+                          @Value("${feed.timeline.hub-followers}") int hubFollowers,
+                          @Value("${feed.timeline.max-users}") int maxUsers) {
+        this.feedStorage = feedStorage;
+        this.friendGraph = friendGraph;
+        this.stageMetrics = stageMetrics;
+        this.capacity = capacity;
+        this.hubFollowers = hubFollowers;
+        this.timelines = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, FeedRing> eldest) {
+                return size() > maxUsers;
+            }
+        });
+    }
+
+    @Override
+    public synchronized void onEvents(List<Feed> events) {
+        long start = System.nanoTime();
+        for (Feed event : events) {
+            int authorId = event.getUserId().intValue();
+            int[] followers = friendGraph.getFollowers(authorId);
+            if (followers.length > hubFollowers) {
+                hubEvents.computeIfAbsent(authorId, id -> new FeedRing(capacity)).add(event);
+            } else {
+                for (int follower : followers) {
+                    FeedRing timeline = timelines.get(follower);
+                    if (timeline != null) {
+                        timeline.add(event);
+                    }
+                }
+            }
+            //У обоих участников мог измениться список друзей, их ленты будут собраны заново при следующем чтении
+            if (event.getEventType() == EventType.FRIEND) {
+                timelines.remove(authorId);
+                timelines.remove(event.getEntityId().intValue());
+            }
+            stageMetrics.record(StageMetrics.TIMELINE, LAG_STAGE,
+                    TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - event.getTimestamp())));
+        }
+        stageMetrics.record(StageMetrics.TIMELINE, FANOUT_STAGE, System.nanoTime() - start);
+    }
+
+    //Удалённые события убираются из буферов подписчиков автора и из буфера хаба
+    @Override
+    public synchronized void onEventsRemoved(List<Feed> events) {
+        Map<Integer, Set<Long>> eventIdsByAuthor = new HashMap<>();
+        events.forEach(event -> eventIdsByAuthor
+                .computeIfAbsent(event.getUserId().intValue(), id -> new HashSet<>())
+                .add(event.getEventId()));
+        eventIdsByAuthor.forEach((authorId, eventIds) -> {
+            Predicate<Feed> removed = event -> eventIds.contains(event.getEventId());
+            FeedRing hubTimeline = hubEvents.get(authorId);
+            if (hubTimeline != null) {
+                hubTimeline.removeIf(removed);
+            }
+            for (int follower : friendGraph.getFollowers(authorId)) {
+                FeedRing timeline = timelines.get(follower);
+                if (timeline != null) {
+                    timeline.removeIf(removed);
+                }
+            }
+        });
+    }
+
+    //До limit последних событий друзей в хронологическом порядке
+    public List<Feed> getTimeline(long userId, int limit) {
+        FeedRing timeline = timelines.get((int) userId);
+        if (timeline == null) {
+            timeline = loadTimeline(userId);
+        }
+
+        long start = System.nanoTime();
+        TreeMap<Long, Feed> merged = new TreeMap<>();
+        timeline.getLatest(limit).forEach(event -> merged.put(event.getEventId(), event));
+        int[] friends = friendGraph.getFriends(userId);
+        hubEvents.forEach((hubId, events) -> {
+            if (Arrays.binarySearch(friends, hubId) >= 0) {
+                events.getLatest(limit).forEach(event -> merged.put(event.getEventId(), event));
+            }
+        });
+        while (merged.size() > limit) {
+            merged.pollFirstEntry();
+        }
+        stageMetrics.record(StageMetrics.TIMELINE, READ_STAGE, System.nanoTime() - start);
+        return new ArrayList<>(merged.values());
+    }
+
+    public Map<String, StageStats> getStats() {
+        return stageMetrics.getStats(StageMetrics.TIMELINE);
+    }
+
+    /*
+    Загрузка под тем же монитором, что и раздача, чтобы не потерять события между чтением FEED и
+    регистрацией буфера. Событие, уже попавшее в FEED, но ещё не разосланное, буфер отбросит как повтор
+     */
+    private synchronized FeedRing loadTimeline(long userId) {
+        FeedRing timeline = timelines.get((int) userId);
+        if (timeline != null) {
+            return timeline;
+        }
+        Set<Long> friendIds = new HashSet<>();
+        for (int friendId : friendGraph.getFriends(userId)) {
+            friendIds.add((long) friendId);
+        }
+        timeline = new FeedRing(capacity);
+        timeline.addAll(feedStorage.getLatestEvents(friendIds, capacity));
+        timelines.put((int) userId, timeline);
+        return timeline;
+    }
+}
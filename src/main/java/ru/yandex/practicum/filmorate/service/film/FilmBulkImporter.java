@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.RequestType;
+import ru.yandex.practicum.filmorate.repository.film.h2.FilmReferenceCache;
+import ru.yandex.practicum.filmorate.service.bulk.BulkImporter;
+import ru.yandex.practicum.filmorate.service.validator.FilmFieldsValidator;
+
+import javax.validation.Validator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+Массовый импорт фильмов пакетами по films.bulk.batch-size.
+Ссылки на MPA, жанры и режиссёров проверяются и заполняются по справочникам в памяти,
+поэтому после вставки фильмы не перечитываются.
+ */
+@Service
+public class FilmBulkImporter extends BulkImporter<Film> {
+
+    private final FilmService filmService;
+    private final FilmFieldsValidator filmFieldsValidator;
+    private final FilmReferenceCache filmReferenceCache;
+
+    public FilmBulkImporter(FilmService filmService,
+                            FilmFieldsValidator filmFieldsValidator,
+                            FilmReferenceCache filmReferenceCache,
+                            Validator validator,
+                            ObjectMapper objectMapper,
+                            @Value("${films.bulk.batch-size}") int batchSize) {
+        super(Film.class, validator, objectMapper, batchSize);
+        this.filmService = filmService;
+        this.filmFieldsValidator = filmFieldsValidator;
+        this.filmReferenceCache = filmReferenceCache;
+    }
+
+    @Override
+    protected void checkItem(Film film) {
+        filmFieldsValidator.checkRequestFilm(film, RequestType.CREATE);
+        film.setMpa(filmReferenceCache.getMpa(film.getMpa().getId()));
+        //"genres": null и "directors": null означают фильм без жанров и режиссёров, как и отсутствующие поля
+        film.setGenres(film.getGenres() == null ? new HashSet<>() : film.getGenres().stream()
+                .map(genre -> filmReferenceCache.getGenre(genre.getId()))
+                .collect(Collectors.toSet()));
+        film.setDirectors(film.getDirectors() == null ? new HashSet<>() : film.getDirectors().stream()
+                .map(director -> filmReferenceCache.getDirector(director.getId()))
+                .collect(Collectors.toSet()));
+    }
+
+    @Override
+    protected void saveBatch(List<Film> films) {
+        filmService.addFilms(films);
+    }
+
+    @Override
+    protected Long getId(Film film) {
+        return film.getId();
+    }
+}
@@ -0,0 +1,242 @@
+package ru.yandex.practicum.filmorate.service.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+//Упакованные в массивы признаки фильмов (жанры, режиссёры, рейтинг, год) для поиска похожих фильмов без SQL
+@Slf4j
+@Component
+public class FilmFeatureIndex {
+
+    private static final int CHUNK_SIZE = 16_384;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int[] NO_DIRECTORS = new int[0];
+    private static final double GENRE_WEIGHT = 3.0;
+    private static final double DIRECTOR_WEIGHT = 2.0;
+    private static final double MPA_WEIGHT = 1.0;
+    private static final double YEAR_WEIGHT = 1.0;
+    private static final double YEAR_SCALE = 5.0;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> slotsByFilmId = new HashMap<>();
+    private long[] filmIds = new long[INITIAL_CAPACITY];
+    private long[] genreBits = new long[INITIAL_CAPACITY];
+    private int[][] directorIds = new int[INITIAL_CAPACITY][];
+    private int[] mpaIds = new int[INITIAL_CAPACITY];
+    private int[] releaseYears = new int[INITIAL_CAPACITY];
+    private int size;
+
+    public void load(List<Film> films) {
+        lock.writeLock().lock();
+        try {
+            films.forEach(this::putUnlocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Film feature index loaded with {} film(s)", films.size());
+    }
+
+    public void put(Film film) {
+        lock.writeLock().lock();
+        try {
+            putUnlocked(film);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putAll(List<Film> films) {
+        lock.writeLock().lock();
+        try {
+            films.forEach(this::putUnlocked);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotsByFilmId.remove(filmId);
+            if (slot == null) {
+                return;
+            }
+            //Переносим последний фильм на место удалённого, чтобы массив оставался плотным
+            int last = --size;
+            if (slot != last) {
+                filmIds[slot] = filmIds[last];
+                genreBits[slot] = genreBits[last];
+                directorIds[slot] = directorIds[last];
+                mpaIds[slot] = mpaIds[last];
+                releaseYears[slot] = releaseYears[last];
+                slotsByFilmId.put(filmIds[slot], slot);
+            }
+            directorIds[last] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(Long filmId) {
+        lock.readLock().lock();
+        try {
+            return slotsByFilmId.containsKey(filmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    //Возвращает id похожих фильмов, отсортированные по убыванию схожести
+    public List<Long> findSimilar(Long filmId, int count) {
+        lock.readLock().lock();
+        try {
+            Integer origin = slotsByFilmId.get(filmId);
+            if (origin == null) {
+                return List.of();
+            }
+            int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+            PriorityQueue<ScoredFilm> top = new PriorityQueue<>(Comparator.comparingDouble(ScoredFilm::getScore));
+            IntStream.range(0, chunks)
+                    .parallel()
+                    .mapToObj(chunk -> scanChunk(origin, chunk * CHUNK_SIZE,
+                            Math.min(size, (chunk + 1) * CHUNK_SIZE), count))
+                    .collect(Collectors.toList())
+                    .forEach(chunkTop -> chunkTop.forEach(scored -> offer(top, scored, count)));
+
+            List<ScoredFilm> result = new ArrayList<>(top);
+            result.sort(Comparator.comparingDouble(ScoredFilm::getScore).reversed());
+            return result.stream()
+                    .map(ScoredFilm::getFilmId)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private PriorityQueue<ScoredFilm> scanChunk(int origin, int from, int to, int count) {
+        PriorityQueue<ScoredFilm> chunkTop = new PriorityQueue<>(Comparator.comparingDouble(ScoredFilm::getScore));
+        long originGenres = genreBits[origin];
+        int[] originDirectors = directorIds[origin];
+        int originMpa = mpaIds[origin];
+        int originYear = releaseYears[origin];
+
+        for (int slot = from; slot < to; slot++) {
+            if (slot == origin) {
+                continue;
+            }
+            double score = 0;
+
+            long genresUnion = originGenres | genreBits[slot];
+            if (genresUnion != 0) {
+                score += GENRE_WEIGHT * Long.bitCount(originGenres & genreBits[slot]) / Long.bitCount(genresUnion);
+            }
+            int[] directors = directorIds[slot];
+            if (originDirectors.length > 0 && directors.length > 0) {
+                score += DIRECTOR_WEIGHT * countCommon(originDirectors, directors)
+                        / Math.min(originDirectors.length, directors.length);
+            }
+            if (originMpa != 0 && originMpa == mpaIds[slot]) {
+                score += MPA_WEIGHT;
+            }
+            score += YEAR_WEIGHT / (1 + Math.abs(originYear - releaseYears[slot]) / YEAR_SCALE);
+
+            if (chunkTop.size() < count || chunkTop.peek().getScore() < score) {
+                offer(chunkTop, new ScoredFilm(filmIds[slot], score), count);
+            }
+        }
+        return chunkTop;
+    }
+
+    private void offer(PriorityQueue<ScoredFilm> top, ScoredFilm scored, int count) {
+        top.offer(scored);
+        if (top.size() > count) {
+            top.poll();
+        }
+    }
+
+    private int countCommon(int[] first, int[] second) {
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] == second[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (first[i] < second[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return common;
+    }
+
+    private void putUnlocked(Film film) {
+        Integer slot = slotsByFilmId.get(film.getId());
+        if (slot == null) {
+            ensureCapacity(size + 1);
+            slot = size++;
+            slotsByFilmId.put(film.getId(), slot);
+        }
+
+        long genres = 0;
+        for (Genre genre : film.getGenres()) {
+            //Жанров немного, поэтому хватает одного long; id за пределами 64 делят биты
+            genres |= 1L << (genre.getId() & 63);
+        }
+        int[] directors = film.getDirectors().isEmpty()
+                ? NO_DIRECTORS
+                : film.getDirectors().stream()
+                .mapToInt(Director::getId)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        filmIds[slot] = film.getId();
+        genreBits[slot] = genres;
+        directorIds[slot] = directors;
+        mpaIds[slot] = film.getMpa() == null ? 0 : film.getMpa().getId();
+        releaseYears[slot] = film.getReleaseDate().getYear();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= filmIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, filmIds.length * 2);
+        filmIds = Arrays.copyOf(filmIds, newCapacity);
+        genreBits = Arrays.copyOf(genreBits, newCapacity);
+        directorIds = Arrays.copyOf(directorIds, newCapacity);
+        mpaIds = Arrays.copyOf(mpaIds, newCapacity);
+        releaseYears = Arrays.copyOf(releaseYears, newCapacity);
+    }
+
+    private static class ScoredFilm {
+        private final long filmId;
+        private final double score;
+
+        ScoredFilm(long filmId, double score) {
+            this.filmId = filmId;
+            this.score = score;
+        }
+
+        long getFilmId() {
+            return filmId;
+        }
+
+        double getScore() {
+            return score;
+        }
+    }
+}
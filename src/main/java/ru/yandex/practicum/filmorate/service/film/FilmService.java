@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.service.film;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
 import ru.yandex.practicum.filmorate.exception.NotExistsException;
 import ru.yandex.practicum.filmorate.model.CataloguedFilm;
@@ -14,17 +15,24 @@ import ru.yandex.practicum.filmorate.model.feed.OperationType;
 import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
 import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
 import ru.yandex.practicum.filmorate.repository.film.h2.FilmLikesDao;
+import ru.yandex.practicum.filmorate.repository.transaction.AfterCommit;
+import ru.yandex.practicum.filmorate.service.filmReview.FilmReviewCache;
+import ru.yandex.practicum.filmorate.service.recommendations.LikesIndex;
 import ru.yandex.practicum.filmorate.service.validator.FilmFieldsValidator;
 import ru.yandex.practicum.filmorate.service.validator.UserFieldsValidator;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static ru.yandex.practicum.filmorate.model.Constants.SEARCH_BY_TITLE;
 import static ru.yandex.practicum.filmorate.model.Constants.SEARCH_BY_DIRECTOR;
+import static ru.yandex.practicum.filmorate.model.Constants.SIMILAR_MODE_CONTENT;
 
 @Service
 public class FilmService {
@@ -34,6 +42,9 @@ public class FilmService {
     private final UserFieldsValidator userFieldsValidator;
     private final FilmLikesDao filmLikesDao;
     private final FeedStorage feedStorage;
+    private final FilmFeatureIndex filmFeatureIndex;
+    private final LikesIndex likesIndex;
+    private final FilmReviewCache filmReviewCache;
     private final Map<Long, CataloguedFilm> filmCatalogue = new HashMap<>();
 
     @Autowired
@@ -41,26 +52,43 @@ public class FilmService {
                        FilmFieldsValidator filmFieldsValidator,
                        UserFieldsValidator userFieldsValidator,
                        FilmLikesDao filmLikesDao,
-                       FeedStorage feedStorage) {
+                       FeedStorage feedStorage,
+                       FilmFeatureIndex filmFeatureIndex,
+                       LikesIndex likesIndex,
+                       FilmReviewCache filmReviewCache) {
         this.filmStorage = filmStorage;
         this.filmFieldsValidator = filmFieldsValidator;
         this.userFieldsValidator = userFieldsValidator;
         this.filmLikesDao = filmLikesDao;
         this.feedStorage = feedStorage;
+        this.filmFeatureIndex = filmFeatureIndex;
+        this.likesIndex = likesIndex;
+        this.filmReviewCache = filmReviewCache;
         initiateFilmCatalogue();
+        filmFeatureIndex.load(filmStorage.getAllFilms());
     }
 
     public Film addFilm(Film film) {
         filmFieldsValidator.checkRequestFilm(film, RequestType.CREATE);
         film = filmStorage.addFilm(film);
         filmCatalogue.put(film.getId(), new CataloguedFilm(film));
+        filmFeatureIndex.put(film);
         return film;
     }
 
+    //Каталог и индекс признаков обновляются один раз на пакет
+    public void addFilms(List<Film> films) {
+        filmStorage.addFilms(films);
+        films.forEach(film -> filmCatalogue.put(film.getId(), new CataloguedFilm(film)));
+        filmFeatureIndex.putAll(films);
+    }
+
     public Film updateFilm(Film film) {
         filmFieldsValidator.checkRequestFilm(film, RequestType.UPDATE);
         Film result = filmStorage.updateFilm(film);
+        result.setLikesCount(likesIndex.getLikesCount(result.getId()));
         filmCatalogue.put(result.getId(), new CataloguedFilm(result));
+        filmFeatureIndex.put(result);
         return result;
     }
 
@@ -76,6 +104,7 @@ public class FilmService {
         ));
     }
 
+    @Transactional
     public void giveLikeFromUserToFilm(Long filmId, Long userId) {
         userFieldsValidator.checkIfPresentById(userId);
         filmFieldsValidator.checkIfPresentById(filmId);
@@ -89,8 +118,10 @@ public class FilmService {
                 .entityId(filmId)
                 .build();
         feedStorage.addEvent(feed);
+        AfterCommit.run(() -> likesIndex.addLike(userId, filmId));
     }
 
+    @Transactional
     public void removeUserLikeFromFilm(Long filmId, Long userId) {
         filmFieldsValidator.checkIfPresentById(filmId);
         userFieldsValidator.checkIfPresentById(userId);
@@ -104,6 +135,7 @@ public class FilmService {
                 .build();
         feedStorage.addEvent(feed);
         filmLikesDao.removeFilmLike(filmId, userId);
+        AfterCommit.run(() -> likesIndex.removeLike(userId, filmId));
     }
 
     public List<Film> getPopularFilms(Integer count, Integer genreId, Integer year) {
@@ -128,6 +160,24 @@ public class FilmService {
 
         filmStorage.removeFilmById(filmId);
         filmCatalogue.remove(filmId);
+        filmFeatureIndex.remove(filmId);
+        likesIndex.removeFilm(filmId);
+        filmReviewCache.invalidate(filmId);
+    }
+
+    public List<Film> getSimilarFilms(Long filmId, String mode, int count) {
+        if (!SIMILAR_MODE_CONTENT.equals(mode)) {
+            throw new IncorrectParameterException("mode", "Should be content");
+        }
+        if (!filmFeatureIndex.contains(filmId)) {
+            throw new NotExistsException(
+                    "Film",
+                    String.format("Film with id %d does not exist", filmId)
+            );
+        }
+
+        List<Long> similarFilmIds = filmFeatureIndex.findSimilar(filmId, count);
+        return sortByIdList(filmStorage.getFilmsByIds(new HashSet<>(similarFilmIds)), similarFilmIds);
     }
 
     public List<Film> getFilmsByDirector(Integer directorId, String sort) {
@@ -179,6 +229,16 @@ public class FilmService {
         return result;
     }
 
+    //Восстанавливает порядок фильмов, потерянный при выборке по IN
+    private List<Film> sortByIdList(List<Film> films, List<Long> orderedIds) {
+        Map<Long, Film> filmsById = films.stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        return orderedIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     private void initiateFilmCatalogue() {
         filmStorage.initiateFilmCatalogue(filmCatalogue);
     }
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.service.filmReview;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.FilmReview;
+import ru.yandex.practicum.filmorate.repository.filmReview.FilmReviewStorage;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Рейтинги полезных отзывов для часто просматриваемых фильмов. Рейтинг фильма загружается из БД при первом
+чтении и дальше обновляется на месте при каждом изменении отзыва или его оценок. Всего хранится не больше
+reviews.cache.max-reviews отзывов: фильмы сверх этого вытесняются по LRU. В БД уходят только запросы
+больше reviews.cache.capacity отзывов и страницы за пределами рейтинга
+ */
+@Slf4j
+@Component
+public class FilmReviewCache {
+
+    private final FilmReviewStorage filmReviewStorage;
+    private final int capacity;
+    private final Map<Long, FilmReviewRanking> rankings;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FilmReviewCache(FilmReviewStorage filmReviewStorage,
+                           @Value("${reviews.cache.capacity}") int capacity,
+                           @Value("${reviews.cache.max-reviews}") int maxReviews) {
+        this.filmReviewStorage = filmReviewStorage;
+        this.capacity = capacity;
+        int maxFilms = Math.max(1, maxReviews / capacity);
+        this.rankings = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, FilmReviewRanking> eldest) {
+                return size() > maxFilms;
+            }
+        });
+    }
+
+    //Страница после курсора (afterUseful, afterReviewId), если он задан; уходящие за рейтинг страницы читаются из БД
+    public List<FilmReview> getFilmReviews(Long filmId, Integer afterUseful, Long afterReviewId, int count) {
+        if (count <= capacity) {
+            FilmReviewRanking ranking = rankings.computeIfAbsent(filmId, id -> new FilmReviewRanking(capacity));
+            FilmReview after = afterUseful == null ? null : FilmReview.builder()
+                    .useful(afterUseful)
+                    .reviewId(afterReviewId)
+                    .build();
+            synchronized (ranking) {
+                //Рейтинг, потерявший часть отзывов после переполнения, перечитывается целиком
+                if (!ranking.isLoaded() || (after == null && !ranking.isComplete() && ranking.size() < count)) {
+                    misses.increment();
+                    ranking.load(filmReviewStorage.getFilmReviews(filmId, null, null, capacity + 1));
+                }
+                List<FilmReview> page = ranking.getPage(after, count);
+                if (page.size() == count || ranking.isComplete()) {
+                    hits.increment();
+                    return page;
+                }
+            }
+        }
+        misses.increment();
+        return filmReviewStorage.getFilmReviews(filmId, afterUseful, afterReviewId, count);
+    }
+
+    /*
+    Вызывается после фиксации изменения. Отзыв перечитывается из БД под монитором рейтинга: так последним
+    в рейтинг попадает самое свежее состояние, даже если изменения одного отзыва обрабатываются параллельно
+     */
+    public void refresh(Long filmId, Long reviewId) {
+        FilmReviewRanking ranking = rankings.get(filmId);
+        if (ranking == null) {
+            return;
+        }
+        synchronized (ranking) {
+            if (!ranking.isLoaded()) {
+                return;
+            }
+            Optional<FilmReview> review = filmReviewStorage.getReviewById(reviewId);
+            if (review.isPresent()) {
+                ranking.offer(review.get());
+            } else {
+                ranking.remove(reviewId);
+            }
+        }
+    }
+
+    public void invalidate(Long filmId) {
+        rankings.remove(filmId);
+    }
+
+    //Для массовых изменений, например удаления пользователя вместе с его отзывами и оценками
+    public void invalidateAll() {
+        rankings.clear();
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new TreeMap<>();
+        stats.put("films", (long) rankings.size());
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        return stats;
+    }
+}
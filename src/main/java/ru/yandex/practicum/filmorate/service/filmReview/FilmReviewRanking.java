@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.service.filmReview;
+
+import ru.yandex.practicum.filmorate.model.FilmReview;
+
+import java.util.*;
+
+/*
+Самые полезные отзывы фильма по убыванию useful, при равенстве - по возрастанию reviewId, как в выдаче из БД.
+Хранится не больше capacity отзывов. Пока рейтинг не переполнялся, в нём все отзывы фильма. После переполнения
+запоминается граница - лучший из вытесненных отзывов: любой отзыв вне рейтинга стоит не выше неё. Отзыв остаётся
+в рейтинге, пока стоит выше границы, даже если опустился ниже последнего в рейтинге
+ */
+public class FilmReviewRanking {
+
+    public static final Comparator<FilmReview> BY_USEFUL = Comparator
+            .comparingInt(FilmReview::getUseful).reversed()
+            .thenComparing(FilmReview::getReviewId);
+
+    private final int capacity;
+    private final TreeSet<FilmReview> ranking = new TreeSet<>(BY_USEFUL);
+    private final Map<Long, FilmReview> reviewsById = new HashMap<>();
+    private boolean loaded;
+    private FilmReview boundary;
+
+    public FilmReviewRanking(int capacity) {
+        this.capacity = capacity;
+    }
+
+    //reviews - первые отзывы фильма в порядке BY_USEFUL, запрошенные с запасом в один сверх capacity
+    public synchronized void load(List<FilmReview> reviews) {
+        ranking.clear();
+        reviewsById.clear();
+        boundary = null;
+        reviews.forEach(this::offer);
+        loaded = true;
+    }
+
+    public synchronized void offer(FilmReview review) {
+        remove(review.getReviewId());
+        if (boundary != null && BY_USEFUL.compare(review, boundary) >= 0) {
+            return;
+        }
+        ranking.add(review);
+        reviewsById.put(review.getReviewId(), review);
+        if (ranking.size() > capacity) {
+            boundary = ranking.pollLast();
+            reviewsById.remove(boundary.getReviewId());
+        }
+    }
+
+    public synchronized void remove(Long reviewId) {
+        FilmReview review = reviewsById.remove(reviewId);
+        if (review != null) {
+            ranking.remove(review);
+        }
+    }
+
+    //До count отзывов, следующих в рейтинге за after (если задан)
+    public synchronized List<FilmReview> getPage(FilmReview after, int count) {
+        List<FilmReview> page = new ArrayList<>(Math.min(count, ranking.size()));
+        for (FilmReview review : after == null ? ranking : ranking.tailSet(after, false)) {
+            if (page.size() == count) {
+                break;
+            }
+            page.add(review);
+        }
+        return page;
+    }
+
+    public synchronized int size() {
+        return ranking.size();
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public synchronized boolean isComplete() {
+        return boundary == null;
+    }
+}
@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.service.filmReview;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exception.IncorrectParameterException;
 import ru.yandex.practicum.filmorate.exception.NotExistsException;
 import ru.yandex.practicum.filmorate.model.FilmReview;
 import ru.yandex.practicum.filmorate.model.RequestType;
@@ -11,6 +12,7 @@ import ru.yandex.practicum.filmorate.service.validator.FilmReviewFieldsValidator
 import ru.yandex.practicum.filmorate.service.validator.UserFieldsValidator;
 
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -20,19 +22,24 @@ public class FilmReviewService {
     private final FilmFieldsValidator filmFieldsValidator;
     private final UserFieldsValidator userFieldsValidator;
     private final FilmReviewFieldsValidator filmReviewFieldsValidator;
+    private final FilmReviewCache filmReviewCache;
 
     public FilmReview addReview(FilmReview filmReview) {
         filmReviewFieldsValidator.checkReviewId(filmReview.getReviewId(), RequestType.CREATE);
         filmFieldsValidator.checkIfPresentById(filmReview.getFilmId());
         userFieldsValidator.checkIfPresentById(filmReview.getUserId());
 
-        return filmReviewStorage.addReview(filmReview);
+        FilmReview addedFilmReview = filmReviewStorage.addReview(filmReview);
+        filmReviewCache.refresh(addedFilmReview.getFilmId(), addedFilmReview.getReviewId());
+        return addedFilmReview;
     }
 
     public FilmReview updateReview(FilmReview filmReview) {
         filmReviewFieldsValidator.checkReviewId(filmReview.getReviewId(), RequestType.UPDATE);
 
-        return filmReviewStorage.updateReview(filmReview);
+        FilmReview updatedFilmReview = filmReviewStorage.updateReview(filmReview);
+        filmReviewCache.refresh(updatedFilmReview.getFilmId(), updatedFilmReview.getReviewId());
+        return updatedFilmReview;
     }
 
     public FilmReview getReviewById(Long reviewId) {
@@ -44,24 +51,29 @@ public class FilmReviewService {
                         ));
     }
 
-    public List<FilmReview> getReviews(Long filmId, int count) {
+    //Курсор задаётся парой useful и reviewId последнего отзыва предыдущей страницы
+    public List<FilmReview> getReviews(Long filmId, Integer afterUseful, Long afterReviewId, int count) {
+        if ((afterUseful == null) != (afterReviewId == null)) {
+            throw new IncorrectParameterException("afterReviewId", "Should be set together with afterUseful");
+        }
         if (filmId == null) {
-            return filmReviewStorage.getAllReviews(count);
+            return filmReviewStorage.getAllReviews(afterUseful, afterReviewId, count);
         } else {
             filmFieldsValidator.checkIfPresentById(filmId);
-            return filmReviewStorage.getFilmReviews(filmId, count);
+            return filmReviewCache.getFilmReviews(filmId, afterUseful, afterReviewId, count);
         }
     }
 
     public void addLikeToReview(Long reviewId, Long userId) {
-        filmReviewFieldsValidator.checkIfPresentById(reviewId);
+        FilmReview filmReview = getReviewById(reviewId);
         userFieldsValidator.checkIfPresentById(userId);
 
         filmReviewStorage.addLikeToReview(reviewId, userId);
+        filmReviewCache.refresh(filmReview.getFilmId(), reviewId);
     }
 
     public void removeLikeFromReview(Long reviewId, Long userId) {
-        filmReviewFieldsValidator.checkIfPresentById(reviewId);
+        FilmReview filmReview = getReviewById(reviewId);
         userFieldsValidator.checkIfPresentById(userId);
 
         boolean isRecordFound = filmReviewStorage.removeLikeFromReview(reviewId, userId);
@@ -71,17 +83,19 @@ public class FilmReviewService {
                     String.format("There is no like from user with id %d to review with id %d", userId, reviewId)
             );
         }
+        filmReviewCache.refresh(filmReview.getFilmId(), reviewId);
     }
 
     public void addDislikeToReview(Long reviewId, Long userId) {
-        filmReviewFieldsValidator.checkIfPresentById(reviewId);
+        FilmReview filmReview = getReviewById(reviewId);
         userFieldsValidator.checkIfPresentById(userId);
 
         filmReviewStorage.addDislikeToReview(reviewId, userId);
+        filmReviewCache.refresh(filmReview.getFilmId(), reviewId);
     }
 
     public void removeDislikeFromReview(Long reviewId, Long userId) {
-        filmReviewFieldsValidator.checkIfPresentById(reviewId);
+        FilmReview filmReview = getReviewById(reviewId);
         userFieldsValidator.checkIfPresentById(userId);
 
         boolean isRecordFound = filmReviewStorage.removeDislikeFromReview(reviewId, userId);
@@ -91,11 +105,17 @@ public class FilmReviewService {
                     String.format("There is no dislike from user with id %d to review with id %d", userId, reviewId)
             );
         }
+        filmReviewCache.refresh(filmReview.getFilmId(), reviewId);
     }
 
     public void deleteReview(Long reviewId) {
-        filmReviewFieldsValidator.checkIfPresentById(reviewId);
+        FilmReview filmReview = getReviewById(reviewId);
         filmReviewStorage.deleteReview(reviewId);
+        filmReviewCache.refresh(filmReview.getFilmId(), reviewId);
+    }
+
+    public Map<String, Long> getCacheStats() {
+        return filmReviewCache.getStats();
     }
 
 }
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.service.metrics;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Накопительные тайминги стадий обработки, общие для рекомендаций и ленты; перцентиль считается по гистограмме
+с фиксированными границами. Стадии разделены по группам, чтобы каждая статистика показывала только свои стадии
+ */
+@Component
+public class StageMetrics {
+
+    public static final String RECOMMENDATIONS = "recommendations";
+    public static final String TIMELINE = "timeline";
+    public static final String RETENTION = "retention";
+
+    private static final long[] BUCKET_BOUNDS_MS = {1, 2, 5, 10, 20, 30, 50, 100, 200, 500, 1000, Long.MAX_VALUE};
+
+    private final Map<String, Map<String, Stage>> groups = new ConcurrentHashMap<>();
+
+    public void record(String group, String stageName, long durationNanos) {
+        getStage(group, stageName).record(durationNanos);
+    }
+
+    public void recordDropped(String group, String stageName) {
+        getStage(group, stageName).dropped.increment();
+    }
+
+    public Map<String, StageStats> getStats(String group) {
+        Map<String, StageStats> stats = new TreeMap<>();
+        groups.getOrDefault(group, Map.of()).forEach((name, stage) -> stats.put(name, stage.toStats()));
+        return stats;
+    }
+
+    private Stage getStage(String group, String stageName) {
+        return groups.computeIfAbsent(group, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(stageName, name -> new Stage());
+    }
+
+    private static class Stage {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MS.length);
+
+        void record(long durationNanos) {
+            calls.increment();
+            totalNanos.add(durationNanos);
+            maxNanos.accumulate(durationNanos);
+            long durationMs = durationNanos / 1_000_000;
+            int bucket = 0;
+            while (durationMs >= BUCKET_BOUNDS_MS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+        }
+
+        StageStats toStats() {
+            long callsCount = calls.sum();
+            return StageStats.builder()
+                    .calls(callsCount)
+                    .dropped(dropped.sum())
+                    .averageMs(callsCount == 0 ? 0 : totalNanos.sum() / 1_000_000.0 / callsCount)
+                    .p99Ms(percentileMs(callsCount, 0.99))
+                    .maxMs(maxNanos.get() / 1_000_000)
+                    .build();
+        }
+
+        //Возвращает верхнюю границу корзины, в которую попадает перцентиль
+        private long percentileMs(long callsCount, double percentile) {
+            long threshold = (long) Math.ceil(callsCount * percentile);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_BOUNDS_MS.length; bucket++) {
+                seen += buckets.get(bucket);
+                if (seen >= threshold && seen > 0) {
+                    return bucket == BUCKET_BOUNDS_MS.length - 1
+                            ? maxNanos.get() / 1_000_000
+                            : BUCKET_BOUNDS_MS[bucket];
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.service.metrics;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class StageStats {
+    private long calls;
+    private long dropped;
+    private double averageMs;
+    private long p99Ms;
+    private long maxMs;
+}
@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.service.recommendations;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+//Лайки в памяти в виде битовых карт в обе стороны: фильмы пользователя и пользователи фильма
+@Slf4j
+@Component
+public class LikesIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, BitSet> filmsByUser = new HashMap<>();
+    private final Map<Integer, BitSet> usersByFilm = new HashMap<>();
+
+    public LikesIndex(@Qualifier("H2FilmRepository") FilmStorage filmStorage) {
+        Map<Long, Set<Long>> userLikes = filmStorage.fillInUserLikes();
+        userLikes.forEach((userId, filmIds) -> filmIds.forEach(filmId -> addLikeUnlocked(userId, filmId)));
+        log.info("Likes index loaded for {} user(s)", userLikes.size());
+    }
+
+    public void addLike(Long userId, Long filmId) {
+        lock.writeLock().lock();
+        try {
+            addLikeUnlocked(userId, filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeLike(Long userId, Long filmId) {
+        lock.writeLock().lock();
+        try {
+            clear(filmsByUser, userId.intValue(), filmId.intValue());
+            clear(usersByFilm, filmId.intValue(), userId.intValue());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            BitSet users = usersByFilm.remove(filmId.intValue());
+            if (users != null) {
+                users.stream().forEach(userId -> clear(filmsByUser, userId, filmId.intValue()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(Long userId) {
+        lock.writeLock().lock();
+        try {
+            BitSet films = filmsByUser.remove(userId.intValue());
+            if (films != null) {
+                films.stream().forEach(filmId -> clear(usersByFilm, filmId, userId.intValue()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getLikesCount(Long filmId) {
+        lock.readLock().lock();
+        try {
+            BitSet users = usersByFilm.get(filmId.intValue());
+            return users == null ? 0 : users.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+    Рекомендации для группы: кандидаты - фильмы соседей каждого участника, которые не лайкал никто из группы.
+    Вклад соседа пропорционален числу общих с участником лайков, оценки участников нормируются и суммируются.
+     */
+    public List<Long> recommendForGroup(Set<Long> userIds, int limit) {
+        lock.readLock().lock();
+        try {
+            BitSet members = new BitSet();
+            BitSet groupFilms = new BitSet();
+            for (Long userId : userIds) {
+                members.set(userId.intValue());
+                groupFilms.or(filmsByUser.getOrDefault(userId.intValue(), new BitSet()));
+            }
+
+            Map<Integer, Double> groupScores = new HashMap<>();
+            Map<Integer, Integer> membersCoverage = new HashMap<>();
+            for (Long userId : userIds) {
+                Map<Integer, Double> memberScores = scoreForMember(userId.intValue(), members, groupFilms);
+                double maxScore = memberScores.values().stream()
+                        .mapToDouble(Double::doubleValue)
+                        .max()
+                        .orElse(0);
+                memberScores.forEach((filmId, score) -> {
+                    groupScores.merge(filmId, score / maxScore, Double::sum);
+                    membersCoverage.merge(filmId, 1, Integer::sum);
+                });
+            }
+
+            List<Long> result = new ArrayList<>(Math.min(limit, groupScores.size()));
+            groupScores.entrySet().stream()
+                    .sorted(Comparator.<Map.Entry<Integer, Double>>comparingInt(
+                                    entry -> membersCoverage.get(entry.getKey()))
+                            .thenComparingDouble(Map.Entry::getValue)
+                            .reversed())
+                    .limit(limit)
+                    .forEach(entry -> result.add(entry.getKey().longValue()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Integer, Double> scoreForMember(int userId, BitSet members, BitSet groupFilms) {
+        BitSet memberFilms = filmsByUser.getOrDefault(userId, new BitSet());
+        BitSet neighbours = new BitSet();
+        memberFilms.stream().forEach(filmId -> neighbours.or(usersByFilm.get(filmId)));
+        neighbours.andNot(members);
+
+        Map<Integer, Double> scores = new HashMap<>();
+        neighbours.stream().forEach(neighbourId -> {
+            BitSet neighbourFilms = filmsByUser.get(neighbourId);
+            BitSet common = (BitSet) neighbourFilms.clone();
+            common.and(memberFilms);
+            int affinity = common.cardinality();
+
+            BitSet candidates = (BitSet) neighbourFilms.clone();
+            candidates.andNot(groupFilms);
+            candidates.stream().forEach(filmId -> scores.merge(filmId, (double) affinity, Double::sum));
+        });
+        return scores;
+    }
+
+    private void addLikeUnlocked(Long userId, Long filmId) {
+        filmsByUser.computeIfAbsent(userId.intValue(), id -> new BitSet()).set(filmId.intValue());
+        usersByFilm.computeIfAbsent(filmId.intValue(), id -> new BitSet()).set(userId.intValue());
+    }
+
+    private void clear(Map<Integer, BitSet> bitmaps, int key, int bit) {
+        BitSet bitmap = bitmaps.get(key);
+        if (bitmap == null) {
+            return;
+        }
+        bitmap.clear(bit);
+        if (bitmap.isEmpty()) {
+            bitmaps.remove(key);
+        }
+    }
+}
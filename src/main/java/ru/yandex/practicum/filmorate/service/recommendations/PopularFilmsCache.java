@@ -0,0 +1,116 @@
+package ru.yandex.practicum.filmorate.service.recommendations;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.*;
+
+/*
+Периодически пересчитываемые списки популярных фильмов для пользователей без лайков.
+Списки строятся отдельно для каждой возрастной группы и содержат только подходящие ей рейтинги MPA.
+Рейтинги групп задаются названиями из справочника mpa_rating (recommendations.cold-start.*-mpa-ratings),
+взрослым доступны все рейтинги.
+ */
+@Slf4j
+@Component
+public class PopularFilmsCache {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int listSize;
+    private final Map<AgeCohort, Set<String>> allowedMpaNames;
+    private volatile Map<AgeCohort, long[]> rankedFilmIds = Map.of();
+
+    public PopularFilmsCache(NamedParameterJdbcTemplate jdbcTemplate,
+                             @Value("${recommendations.cold-start.list-size}") int listSize,
+                             @Value("${recommendations.cold-start.child-mpa-ratings}") Set<String> childMpaNames,
+                             @Value("${recommendations.cold-start.teen-mpa-ratings}") Set<String> teenMpaNames) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.listSize = listSize;
+        this.allowedMpaNames = new EnumMap<>(Map.of(
+                AgeCohort.CHILD, childMpaNames,
+                AgeCohort.TEEN, teenMpaNames));
+    }
+
+    public List<Long> getPopularFilmIds(LocalDate birthday, Set<Long> excludedFilmIds, int count) {
+        long[] filmIds = rankedFilmIds.getOrDefault(AgeCohort.of(birthday), new long[0]);
+        List<Long> result = new ArrayList<>(Math.min(count, filmIds.length));
+        for (int i = 0; i < filmIds.length && result.size() < count; i++) {
+            if (!excludedFilmIds.contains(filmIds[i])) {
+                result.add(filmIds[i]);
+            }
+        }
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${recommendations.cold-start.refresh-interval-ms}")
+    public void refresh() {
+        long start = System.nanoTime();
+        String sqlQuery = "SELECT f.film_id, mpa.mpa_rating_name, u.birthday " +
+                "FROM user_film_likes AS likes " +
+                "JOIN film AS f ON likes.film_id = f.film_id " +
+                "LEFT JOIN mpa_rating AS mpa ON f.mpa_rating_id = mpa.mpa_rating_id " +
+                "JOIN users AS u ON likes.user_id = u.user_id";
+        Map<Long, int[]> likesByFilm = new HashMap<>();
+        Map<Long, String> mpaByFilm = new HashMap<>();
+        AgeCohort[] cohorts = AgeCohort.values();
+
+        //Последний элемент счётчиков - общее число лайков, используется для упорядочивания при равенстве
+        jdbcTemplate.query(sqlQuery, new MapSqlParameterSource(), rs -> {
+            long filmId = rs.getLong("film_id");
+            int[] counts = likesByFilm.computeIfAbsent(filmId, id -> new int[cohorts.length + 1]);
+            counts[AgeCohort.of(rs.getDate("birthday").toLocalDate()).ordinal()]++;
+            counts[cohorts.length]++;
+            mpaByFilm.put(filmId, rs.getString("mpa_rating_name"));
+        });
+
+        Map<AgeCohort, long[]> refreshed = new EnumMap<>(AgeCohort.class);
+        for (AgeCohort cohort : cohorts) {
+            refreshed.put(cohort, likesByFilm.keySet().stream()
+                    .filter(filmId -> isAllowed(cohort, mpaByFilm.get(filmId)))
+                    .sorted(Comparator.<Long>comparingInt(filmId -> likesByFilm.get(filmId)[cohort.ordinal()])
+                            .thenComparingInt(filmId -> likesByFilm.get(filmId)[cohorts.length])
+                            .reversed())
+                    .limit(listSize)
+                    .mapToLong(Long::longValue)
+                    .toArray());
+        }
+        rankedFilmIds = refreshed;
+        log.info("Popular films cache refreshed in {} ms for {} liked film(s)",
+                (System.nanoTime() - start) / 1_000_000, likesByFilm.size());
+    }
+
+    //Фильм без рейтинга доступен всем группам
+    private boolean isAllowed(AgeCohort cohort, String mpaName) {
+        Set<String> allowed = allowedMpaNames.get(cohort);
+        return mpaName == null || allowed == null || allowed.contains(mpaName);
+    }
+
+    enum AgeCohort {
+        CHILD(0),
+        TEEN(13),
+        ADULT(18);
+
+        private final int minAge;
+
+        AgeCohort(int minAge) {
+            this.minAge = minAge;
+        }
+
+        static AgeCohort of(LocalDate birthday) {
+            int age = Period.between(birthday, LocalDate.now()).getYears();
+            AgeCohort result = CHILD;
+            for (AgeCohort cohort : values()) {
+                if (age >= cohort.minAge) {
+                    result = cohort;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -1,69 +1,163 @@
 package ru.yandex.practicum.filmorate.service.recommendations;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
+import ru.yandex.practicum.filmorate.repository.film.h2.FilmLikesDao;
+import ru.yandex.practicum.filmorate.repository.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.metrics.StageMetrics;
+import ru.yandex.practicum.filmorate.service.metrics.StageStats;
+import ru.yandex.practicum.filmorate.service.recommendations.model.AlsModel;
+import ru.yandex.practicum.filmorate.service.recommendations.model.AlsModelStore;
+import ru.yandex.practicum.filmorate.service.recommendations.pipeline.RecommendationPipeline;
+import ru.yandex.practicum.filmorate.service.validator.UserFieldsValidator;
 
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 public class RecommendationsService {
 
+    private static final String HYDRATE_STAGE = "hydrate";
+
+    private static final String TOTAL_STAGE = "total";
+
+    //Размер выдачи популярных фильмов для запроса без count
+    private static final int DEFAULT_COLD_START_COUNT = 10;
+
     private final FilmStorage filmStorage;
 
-    private final JdbcTemplate jdbcTemplate;
+    private final FilmLikesDao filmLikesDao;
+
+    private final AlsModelStore alsModelStore;
+
+    private final UserStorage userStorage;
+
+    private final PopularFilmsCache popularFilmsCache;
+
+    private final RecommendationPipeline recommendationPipeline;
+
+    private final StageMetrics stageMetrics;
+
+    private final LikesIndex likesIndex;
+
+    private final UserFieldsValidator userFieldsValidator;
+
+    private final int coldStartLikeThreshold;
 
     @Autowired
-    public RecommendationsService(@Qualifier("H2FilmRepository") FilmStorage filmStorage, JdbcTemplate jdbcTemplate) {
+    public RecommendationsService(@Qualifier("H2FilmRepository") FilmStorage filmStorage,
+                                  FilmLikesDao filmLikesDao,
+                                  AlsModelStore alsModelStore,
+                                  @Qualifier("H2UserRepository") UserStorage userStorage,
+                                  PopularFilmsCache popularFilmsCache,
+                                  RecommendationPipeline recommendationPipeline,
+                                  StageMetrics stageMetrics,
+                                  LikesIndex likesIndex,
+                                  UserFieldsValidator userFieldsValidator,
+                                  @Value("${recommendations.cold-start.like-threshold}") int coldStartLikeThreshold) {
         this.filmStorage = filmStorage;
-        this.jdbcTemplate = jdbcTemplate;
+        this.filmLikesDao = filmLikesDao;
+        this.alsModelStore = alsModelStore;
+        this.userStorage = userStorage;
+        this.popularFilmsCache = popularFilmsCache;
+        this.recommendationPipeline = recommendationPipeline;
+        this.stageMetrics = stageMetrics;
+        this.likesIndex = likesIndex;
+        this.userFieldsValidator = userFieldsValidator;
+        this.coldStartLikeThreshold = coldStartLikeThreshold;
     }
 
+    /*
+    Выдача GET /users/{id}/recommendations без count, как до появления конвейера: все фильмы пользователей
+    с общими лайками, кроме уже лайкнутых, без ограничения размера и без подмешивания других источников
+     */
     public List<Film> getRecommendations(long userId) {
-        Set<Long> similarUsers = findUsersWithIntersectingLikes(userId);
-        Set<Long> recommendedFilmIds = findRecommendedFilmIds(userId, similarUsers);
-        return filmStorage.getFilmsByIds(recommendedFilmIds);
+        Set<Long> likedFilmIds = filmLikesDao.getUserLikedFilmIds(userId);
+        if (likedFilmIds.isEmpty()) {
+            return getColdStartRecommendations(userId, likedFilmIds, DEFAULT_COLD_START_COUNT);
+        }
+
+        List<Long> recommendedFilmIds = new ArrayList<>(new TreeSet<>(filmLikesDao.getFilmIdsLikedByNeighbours(userId)));
+        if (recommendedFilmIds.isEmpty() && likedFilmIds.size() < coldStartLikeThreshold) {
+            return getColdStartRecommendations(userId, likedFilmIds, DEFAULT_COLD_START_COUNT);
+        }
+        return getFilmsInOrder(recommendedFilmIds);
     }
 
-    public Set<Long> findUsersWithIntersectingLikes(long userId) {
-        String sqlQuery = "SELECT DISTINCT uf2.USER_ID " +
-                "FROM USER_FILM_LIKES uf " +
-                "JOIN USER_FILM_LIKES uf2 ON uf.FILM_ID = uf2.FILM_ID " +
-                "WHERE uf.USER_ID = ? AND uf2.USER_ID != ?";
+    //Страница из count лучших фильмов конвейера: соседи, похожие по лайкам и популярные в жанрах фильмы
+    public List<Film> getRecommendations(long userId, int count) {
+        long start = System.nanoTime();
+        Set<Long> likedFilmIds = filmLikesDao.getUserLikedFilmIds(userId);
+        //Без лайков соседей не найти, поэтому запросы к БД не нужны
+        if (likedFilmIds.isEmpty()) {
+            return getColdStartRecommendations(userId, likedFilmIds, count);
+        }
 
-        Object[] params = {userId, userId};
+        List<Long> recommendedFilmIds = recommendationPipeline.recommend(userId, likedFilmIds, count);
+        //Популярные фильмы заменяют только пустую выдачу: найденные по соседям рекомендации остаются в силе
+        if (recommendedFilmIds.isEmpty() && likedFilmIds.size() < coldStartLikeThreshold) {
+            return getColdStartRecommendations(userId, likedFilmIds, count);
+        }
 
-        List<Integer> results = jdbcTemplate.queryForList(sqlQuery, params, Integer.class);
+        long hydrateStart = System.nanoTime();
+        List<Film> films = getFilmsInOrder(recommendedFilmIds);
+        stageMetrics.record(StageMetrics.RECOMMENDATIONS, HYDRATE_STAGE, System.nanoTime() - hydrateStart);
+        stageMetrics.record(StageMetrics.RECOMMENDATIONS, TOTAL_STAGE, System.nanoTime() - start);
+        return films;
+    }
 
-        Set<Long> similarUserIds = new HashSet<>();
-        for (int userIdObj : results) {
-            similarUserIds.add((long) userIdObj);
-        }
+    public List<Film> getGroupRecommendations(Set<Long> userIds, int limit) {
+        userIds.forEach(userFieldsValidator::checkIfPresentById);
 
-        return similarUserIds;
+        return getFilmsInOrder(likesIndex.recommendForGroup(userIds, limit));
     }
 
-    public Set<Long> findRecommendedFilmIds(long userId, Set<Long> similarUsers) {
-        String sqlQuery = "SELECT DISTINCT uf.FILM_ID " +
-                "FROM USER_FILM_LIKES uf " +
-                "LEFT JOIN USER_FILM_LIKES uf2 ON uf.FILM_ID = uf2.FILM_ID AND uf2.USER_ID = ? " +
-                "WHERE uf.USER_ID IN (?) AND uf2.USER_ID IS NULL";
+    public Map<String, StageStats> getStageStats() {
+        return stageMetrics.getStats(StageMetrics.RECOMMENDATIONS);
+    }
+
+    //Рекомендации по обученной модели; если модели нет или пользователь в неё не попал, используем лайки
+    public List<Film> getModelRecommendations(long userId, int count) {
+        Optional<AlsModel> model = alsModelStore.getModel();
+        if (model.isEmpty() || !model.get().containsUser(userId)) {
+            log.debug("No model factors for user with id {}, falling back to likes", userId);
+            return getRecommendations(userId, count);
+        }
 
-        Object[] params = {userId, similarUsers.toArray()};
+        long start = System.nanoTime();
+        List<Long> recommendedFilmIds = model.get().recommend(userId, filmLikesDao.getUserLikedFilmIds(userId), count);
+        log.debug("Model scoring for user with id {} took {} us", userId, (System.nanoTime() - start) / 1_000);
 
-        List<Integer> results = jdbcTemplate.queryForList(sqlQuery, params, Integer.class);
+        return getFilmsInOrder(recommendedFilmIds);
+    }
 
-        Set<Long> recommendedFilmIds = new HashSet<>();
-        for (int filmIdObj : results) {
-            recommendedFilmIds.add((long) filmIdObj);
+    private List<Film> getColdStartRecommendations(long userId, Set<Long> likedFilmIds, int count) {
+        Optional<User> user = userStorage.getUserById(userId);
+        if (user.isEmpty()) {
+            return List.of();
         }
 
-        return recommendedFilmIds;
+        List<Long> popularFilmIds = popularFilmsCache.getPopularFilmIds(user.get().getBirthday(), likedFilmIds, count);
+        log.debug("User with id {} has {} like(s), serving {} popular film(s)",
+                userId, likedFilmIds.size(), popularFilmIds.size());
+        return getFilmsInOrder(popularFilmIds);
+    }
+
+    private List<Film> getFilmsInOrder(List<Long> filmIds) {
+        Map<Long, Film> filmsById = filmStorage.getFilmsByIds(new HashSet<>(filmIds)).stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
+        return filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+}
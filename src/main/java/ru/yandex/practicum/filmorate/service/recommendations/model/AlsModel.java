@@ -0,0 +1,205 @@
+package ru.yandex.practicum.filmorate.service.recommendations.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/*
+Модель матричной факторизации, отображённая в память из файла.
+Формат файла: заголовок (magic, factors, userCount, itemCount),
+затем отсортированные id пользователей и фильмов и матрицы факторов построчно.
+ */
+public class AlsModel {
+
+    private static final int MAGIC = 0x414C5331;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final int factors;
+    private final LongBuffer userIds;
+    private final LongBuffer itemIds;
+    private final FloatBuffer userFactors;
+    private final FloatBuffer itemFactors;
+
+    private AlsModel(int factors, LongBuffer userIds, LongBuffer itemIds,
+                     FloatBuffer userFactors, FloatBuffer itemFactors) {
+        this.factors = factors;
+        this.userIds = userIds;
+        this.itemIds = itemIds;
+        this.userFactors = userFactors;
+        this.itemFactors = itemFactors;
+    }
+
+    public static AlsModel load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(String.format("File %s is not a recommendations model", path));
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException(String.format("File %s is not a recommendations model", path));
+            }
+            int factors = header.getInt(Integer.BYTES);
+            int userCount = header.getInt(2 * Integer.BYTES);
+            int itemCount = header.getInt(3 * Integer.BYTES);
+
+            //Смещения считаются в long: матрицы факторов больших моделей не умещаются в 2 ГБ одного отображения
+            long userIdsBytes = (long) userCount * Long.BYTES;
+            long itemIdsBytes = (long) itemCount * Long.BYTES;
+            long userFactorsBytes = (long) userCount * factors * Float.BYTES;
+            long itemFactorsBytes = (long) itemCount * factors * Float.BYTES;
+            long expectedSize = HEADER_BYTES + userIdsBytes + itemIdsBytes + userFactorsBytes + itemFactorsBytes;
+            if (channel.size() != expectedSize) {
+                throw new IOException(String.format("File %s has size %d, expected %d by its header",
+                        path, channel.size(), expectedSize));
+            }
+
+            //Отображения остаются валидными и после закрытия канала
+            long offset = HEADER_BYTES;
+            LongBuffer userIds = map(channel, path, offset, userIdsBytes).asLongBuffer();
+            offset += userIdsBytes;
+            LongBuffer itemIds = map(channel, path, offset, itemIdsBytes).asLongBuffer();
+            offset += itemIdsBytes;
+            FloatBuffer userFactors = map(channel, path, offset, userFactorsBytes).asFloatBuffer();
+            offset += userFactorsBytes;
+            FloatBuffer itemFactors = map(channel, path, offset, itemFactorsBytes).asFloatBuffer();
+
+            return new AlsModel(factors, userIds, itemIds, userFactors, itemFactors);
+        }
+    }
+
+    //id должны быть отсортированы, строки матриц факторов идут в том же порядке
+    public static void write(Path path, int factors, long[] userIds, long[] itemIds,
+                             float[] userFactors, float[] itemFactors) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tempFile = Files.createTempFile(parent, "recommendations-model", ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(factors);
+            out.writeInt(userIds.length);
+            out.writeInt(itemIds.length);
+            for (long userId : userIds) {
+                out.writeLong(userId);
+            }
+            for (long itemId : itemIds) {
+                out.writeLong(itemId);
+            }
+            for (float value : userFactors) {
+                out.writeFloat(value);
+            }
+            for (float value : itemFactors) {
+                out.writeFloat(value);
+            }
+        }
+
+        //Подменяем файл целиком, чтобы читатели не увидели недописанную модель
+        Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public boolean containsUser(long userId) {
+        return findRow(userIds, userId) >= 0;
+    }
+
+    //Возвращает id фильмов с наибольшим скалярным произведением факторов, исключая excludedItemIds
+    public List<Long> recommend(long userId, Set<Long> excludedItemIds, int count) {
+        int userRow = findRow(userIds, userId);
+        if (userRow < 0) {
+            return List.of();
+        }
+        float[] userVector = new float[factors];
+        for (int f = 0; f < factors; f++) {
+            userVector[f] = userFactors.get(userRow * factors + f);
+        }
+
+        //Исключённые фильмы переводятся в номера строк, чтобы не упаковывать id каждого фильма в Long
+        BitSet excludedRows = new BitSet(itemIds.limit());
+        for (long itemId : excludedItemIds) {
+            int row = findRow(itemIds, itemId);
+            if (row >= 0) {
+                excludedRows.set(row);
+            }
+        }
+
+        int itemCount = itemIds.limit();
+        int[] topRows = new int[count];
+        float[] topScores = new float[count];
+        int topSize = 0;
+        for (int row = 0; row < itemCount; row++) {
+            if (excludedRows.get(row)) {
+                continue;
+            }
+            float score = 0;
+            int rowOffset = row * factors;
+            for (int f = 0; f < factors; f++) {
+                score += userVector[f] * itemFactors.get(rowOffset + f);
+            }
+            if (topSize < count) {
+                topSize++;
+            } else if (score <= topScores[topSize - 1]) {
+                continue;
+            }
+            //Вставка в отсортированный по убыванию массив: count мал, поэтому это дешевле кучи
+            int position = topSize - 1;
+            while (position > 0 && topScores[position - 1] < score) {
+                topScores[position] = topScores[position - 1];
+                topRows[position] = topRows[position - 1];
+                position--;
+            }
+            topScores[position] = score;
+            topRows[position] = row;
+        }
+
+        List<Long> recommendedItemIds = new ArrayList<>(topSize);
+        for (int i = 0; i < topSize; i++) {
+            recommendedItemIds.add(itemIds.get(topRows[i]));
+        }
+        return recommendedItemIds;
+    }
+
+    public int getFactors() {
+        return factors;
+    }
+
+    public int getUserCount() {
+        return userIds.limit();
+    }
+
+    public int getItemCount() {
+        return itemIds.limit();
+    }
+
+    private static int findRow(LongBuffer sortedIds, long id) {
+        int low = 0;
+        int high = sortedIds.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleId = sortedIds.get(middle);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static ByteBuffer map(FileChannel channel, Path path, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Section of %d bytes in file %s is too large to map", length, path));
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.service.recommendations.model;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+@Slf4j
+@Component
+public class AlsModelStore {
+
+    private final Path modelPath;
+    private volatile AlsModel model;
+
+    public AlsModelStore(@Value("${recommendations.model.path}") String modelPath) {
+        this.modelPath = Paths.get(modelPath);
+        reload();
+    }
+
+    public Optional<AlsModel> getModel() {
+        return Optional.ofNullable(model);
+    }
+
+    public Path getModelPath() {
+        return modelPath;
+    }
+
+    public void reload() {
+        if (!Files.exists(modelPath)) {
+            log.info("Recommendations model {} not found, model mode is unavailable", modelPath);
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            AlsModel loadedModel = AlsModel.load(modelPath);
+            model = loadedModel;
+            log.info("Recommendations model loaded in {} ms: {} users, {} films, {} factors",
+                    (System.nanoTime() - start) / 1_000_000,
+                    loadedModel.getUserCount(), loadedModel.getItemCount(), loadedModel.getFactors());
+        } catch (IOException e) {
+            log.error("Failed to load recommendations model {}: {}", modelPath, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ru.yandex.practicum.filmorate.service.recommendations.model;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/*
+Обучение модели рекомендаций методом ALS для неявной обратной связи (лайков).
+Запускается по расписанию (recommendations.model.train-cron)
+или разово из командной строки с аргументом --train-recommendations-model.
+ */
+@Slf4j
+@Component
+public class AlsTrainer implements ApplicationRunner {
+
+    private static final String TRAIN_OPTION = "train-recommendations-model";
+    private static final long RANDOM_SEED = 42L;
+
+    private final FilmStorage filmStorage;
+    private final AlsModelStore alsModelStore;
+    private final ApplicationContext applicationContext;
+    private final int factors;
+    private final int iterations;
+    private final double regularization;
+    private final double alpha;
+
+    public AlsTrainer(@Qualifier("H2FilmRepository") FilmStorage filmStorage,
+                      AlsModelStore alsModelStore,
+                      ApplicationContext applicationContext,
+                      @Value("${recommendations.model.factors}") int factors,
+                      @Value("${recommendations.model.iterations}") int iterations,
+                      @Value("${recommendations.model.regularization}") double regularization,
+                      @Value("${recommendations.model.alpha}") double alpha) {
+        this.filmStorage = filmStorage;
+        this.alsModelStore = alsModelStore;
+        this.applicationContext = applicationContext;
+        this.factors = factors;
+        this.iterations = iterations;
+        this.regularization = regularization;
+        this.alpha = alpha;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        if (!args.containsOption(TRAIN_OPTION)) {
+            return;
+        }
+        train();
+        System.exit(SpringApplication.exit(applicationContext, () -> 0));
+    }
+
+    @Scheduled(cron = "${recommendations.model.train-cron}")
+    public void trainScheduled() {
+        try {
+            train();
+        } catch (IOException e) {
+            log.error("Failed to write recommendations model: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void train() throws IOException {
+        long start = System.nanoTime();
+        Map<Long, Set<Long>> userLikes = filmStorage.fillInUserLikes();
+        if (userLikes.isEmpty()) {
+            log.info("No likes found, recommendations model training skipped");
+            return;
+        }
+
+        long[] userIds = userLikes.keySet().stream()
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+        long[] itemIds = userLikes.values().stream()
+                .flatMap(Set::stream)
+                .mapToLong(Long::longValue)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        //Разреженная матрица лайков в обе стороны: строки пользователей и строки фильмов
+        int[][] userItems = new int[userIds.length][];
+        int[] itemLikesCount = new int[itemIds.length];
+        for (int userRow = 0; userRow < userIds.length; userRow++) {
+            userItems[userRow] = userLikes.get(userIds[userRow]).stream()
+                    .mapToInt(itemId -> Arrays.binarySearch(itemIds, itemId))
+                    .toArray();
+            for (int itemRow : userItems[userRow]) {
+                itemLikesCount[itemRow]++;
+            }
+        }
+        int[][] itemUsers = new int[itemIds.length][];
+        for (int itemRow = 0; itemRow < itemIds.length; itemRow++) {
+            itemUsers[itemRow] = new int[itemLikesCount[itemRow]];
+            itemLikesCount[itemRow] = 0;
+        }
+        for (int userRow = 0; userRow < userIds.length; userRow++) {
+            for (int itemRow : userItems[userRow]) {
+                itemUsers[itemRow][itemLikesCount[itemRow]++] = userRow;
+            }
+        }
+
+        float[] userFactors = new float[userIds.length * factors];
+        float[] itemFactors = randomFactors(itemIds.length);
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            solveSide(userFactors, userItems, itemFactors, itemIds.length);
+            solveSide(itemFactors, itemUsers, userFactors, userIds.length);
+        }
+        long trainedAt = System.nanoTime();
+
+        AlsModel.write(alsModelStore.getModelPath(), factors, userIds, itemIds, userFactors, itemFactors);
+        log.info("Recommendations model trained in {} ms and written in {} ms: {} users, {} films, {} iterations",
+                (trainedAt - start) / 1_000_000, (System.nanoTime() - trainedAt) / 1_000_000,
+                userIds.length, itemIds.length, iterations);
+        alsModelStore.reload();
+    }
+
+    /*
+    Пересчёт факторов одной стороны при фиксированной другой:
+    x = (YtY + alpha * sum(y * yt) + lambda * I)^-1 * (1 + alpha) * sum(y) по лайкнутым строкам
+     */
+    private void solveSide(float[] target, int[][] interactions, float[] fixed, int fixedCount) {
+        double[] gram = new double[factors * factors];
+        for (int row = 0; row < fixedCount; row++) {
+            int offset = row * factors;
+            for (int i = 0; i < factors; i++) {
+                double value = fixed[offset + i];
+                for (int j = 0; j < factors; j++) {
+                    gram[i * factors + j] += value * fixed[offset + j];
+                }
+            }
+        }
+
+        IntStream.range(0, interactions.length).parallel().forEach(row -> {
+            double[] matrix = gram.clone();
+            double[] vector = new double[factors];
+            for (int other : interactions[row]) {
+                int offset = other * factors;
+                for (int i = 0; i < factors; i++) {
+                    double value = fixed[offset + i];
+                    vector[i] += (1 + alpha) * value;
+                    for (int j = 0; j < factors; j++) {
+                        matrix[i * factors + j] += alpha * value * fixed[offset + j];
+                    }
+                }
+            }
+            for (int i = 0; i < factors; i++) {
+                matrix[i * factors + i] += regularization;
+            }
+
+            solveCholesky(matrix, vector);
+            for (int i = 0; i < factors; i++) {
+                target[row * factors + i] = (float) vector[i];
+            }
+        });
+    }
+
+    //Решает matrix * x = vector для симметричной положительно определённой матрицы, результат пишется в vector
+    private void solveCholesky(double[] matrix, double[] vector) {
+        for (int i = 0; i < factors; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = matrix[i * factors + j];
+                for (int p = 0; p < j; p++) {
+                    sum -= matrix[i * factors + p] * matrix[j * factors + p];
+                }
+                if (i == j) {
+                    matrix[i * factors + i] = Math.sqrt(Math.max(sum, 1e-12));
+                } else {
+                    matrix[i * factors + j] = sum / matrix[j * factors + j];
+                }
+            }
+        }
+        for (int i = 0; i < factors; i++) {
+            double sum = vector[i];
+            for (int p = 0; p < i; p++) {
+                sum -= matrix[i * factors + p] * vector[p];
+            }
+            vector[i] = sum / matrix[i * factors + i];
+        }
+        for (int i = factors - 1; i >= 0; i--) {
+            double sum = vector[i];
+            for (int p = i + 1; p < factors; p++) {
+                sum -= matrix[p * factors + i] * vector[p];
+            }
+            vector[i] = sum / matrix[i * factors + i];
+        }
+    }
+
+    private float[] randomFactors(int rows) {
+        Random random = new Random(RANDOM_SEED);
+        float[] values = new float[rows * factors];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) (random.nextGaussian() * 0.01);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.service.recommendations.pipeline;
+
+import java.util.Map;
+import java.util.Set;
+
+//Источник кандидатов для рекомендаций: возвращает id фильмов с неотрицательной оценкой
+public interface CandidateGenerator {
+
+    String getName();
+
+    double getWeight();
+
+    Map<Long, Double> generate(long userId, Set<Long> likedFilmIds);
+
+    //Основной источник не отбрасывается по бюджету времени: без него выдача была бы пустой
+    default boolean isPrimary() {
+        return false;
+    }
+}
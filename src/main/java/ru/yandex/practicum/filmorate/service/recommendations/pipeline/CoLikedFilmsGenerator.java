@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.service.recommendations.pipeline;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.repository.film.h2.FilmLikesDao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+//Фильмы, которые лайкали вместе с понравившимися пользователю, с поправкой на общую популярность
+@Component
+@RequiredArgsConstructor
+public class CoLikedFilmsGenerator implements CandidateGenerator {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final FilmLikesDao filmLikesDao;
+
+    @Override
+    public String getName() {
+        return "coLikedFilms";
+    }
+
+    @Override
+    public double getWeight() {
+        return 0.8;
+    }
+
+    @Override
+    public Map<Long, Double> generate(long userId, Set<Long> likedFilmIds) {
+        if (likedFilmIds.isEmpty()) {
+            return Map.of();
+        }
+        String sqlQuery = "SELECT co.film_id, COUNT(*) AS co_likes " +
+                "FROM user_film_likes AS liked " +
+                "JOIN user_film_likes AS co ON co.user_id = liked.user_id AND co.film_id <> liked.film_id " +
+                "WHERE liked.film_id IN (:likedFilmIds) AND liked.user_id <> :userId " +
+                "GROUP BY co.film_id";
+        SqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("likedFilmIds", likedFilmIds);
+        Map<Long, Long> coLikes = new HashMap<>();
+
+        jdbcTemplate.query(sqlQuery, namedParams, rs -> {
+            coLikes.put(rs.getLong("film_id"), rs.getLong("co_likes"));
+        });
+        if (coLikes.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, Long> likesCount = filmLikesDao.getFilmsLikes(new ArrayList<>(coLikes.keySet()));
+        Map<Long, Double> candidates = new HashMap<>();
+        coLikes.forEach((filmId, count) ->
+                candidates.put(filmId, count / Math.sqrt(likesCount.getOrDefault(filmId, count))));
+        return candidates;
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.service.recommendations.pipeline;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+//Фильмы ближайших соседей: пользователей с наибольшим числом общих лайков
+@Component
+@RequiredArgsConstructor
+public class NeighbourLikesGenerator implements CandidateGenerator {
+
+    private static final int NEIGHBOURS_LIMIT = 50;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public String getName() {
+        return "neighbourLikes";
+    }
+
+    @Override
+    public double getWeight() {
+        return 1.0;
+    }
+
+    @Override
+    public boolean isPrimary() {
+        return true;
+    }
+
+    @Override
+    public Map<Long, Double> generate(long userId, Set<Long> likedFilmIds) {
+        String sqlQuery = "SELECT candidate.film_id, SUM(n.overlap) AS score " +
+                "FROM (SELECT neighbour.user_id, COUNT(*) AS overlap " +
+                "FROM user_film_likes AS own " +
+                "JOIN user_film_likes AS neighbour ON own.film_id = neighbour.film_id " +
+                "WHERE own.user_id = :userId AND neighbour.user_id <> :userId " +
+                "GROUP BY neighbour.user_id " +
+                "ORDER BY overlap DESC " +
+                "LIMIT :neighboursLimit) AS n " +
+                "JOIN user_film_likes AS candidate ON candidate.user_id = n.user_id " +
+                "GROUP BY candidate.film_id";
+        SqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("neighboursLimit", NEIGHBOURS_LIMIT);
+        Map<Long, Double> candidates = new HashMap<>();
+
+        jdbcTemplate.query(sqlQuery, namedParams, rs -> {
+            candidates.put(rs.getLong("film_id"), rs.getDouble("score"));
+        });
+        return candidates;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.service.recommendations.pipeline;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+//Самые популярные фильмы в жанрах, которые пользователь уже лайкал
+@Component
+@RequiredArgsConstructor
+public class PopularInGenreGenerator implements CandidateGenerator {
+
+    private static final int CANDIDATES_LIMIT = 200;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public String getName() {
+        return "popularInGenre";
+    }
+
+    @Override
+    public double getWeight() {
+        return 0.3;
+    }
+
+    @Override
+    public Map<Long, Double> generate(long userId, Set<Long> likedFilmIds) {
+        if (likedFilmIds.isEmpty()) {
+            return Map.of();
+        }
+        String sqlQuery = "SELECT fg.film_id, COUNT(DISTINCT likes.user_id) AS score " +
+                "FROM film_genre AS fg " +
+                "JOIN user_film_likes AS likes ON likes.film_id = fg.film_id " +
+                "WHERE fg.genre_id IN " +
+                "(SELECT genre_id " +
+                "FROM film_genre " +
+                "WHERE film_id IN (:likedFilmIds)) " +
+                "GROUP BY fg.film_id " +
+                "ORDER BY score DESC " +
+                "LIMIT :limit";
+        SqlParameterSource namedParams = new MapSqlParameterSource()
+                .addValue("likedFilmIds", likedFilmIds)
+                .addValue("limit", CANDIDATES_LIMIT);
+        Map<Long, Double> candidates = new HashMap<>();
+
+        jdbcTemplate.query(sqlQuery, namedParams, rs -> {
+            candidates.put(rs.getLong("film_id"), rs.getDouble("score"));
+        });
+        return candidates;
+    }
+}
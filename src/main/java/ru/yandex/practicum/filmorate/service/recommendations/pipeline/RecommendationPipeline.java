@@ -0,0 +1,133 @@
+package ru.yandex.practicum.filmorate.service.recommendations.pipeline;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.metrics.StageMetrics;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/*
+Конвейер рекомендаций: генераторы кандидатов работают параллельно с общим бюджетом времени,
+опоздавшие отбрасываются, остальные результаты сливаются, очищаются от уже лайкнутого и ранжируются.
+Основной генератор дожидается и после бюджета. Очередь пула ограничена: при перегрузке основной генератор
+выполняется в вызывающем потоке, остальные отбрасываются.
+ */
+@Slf4j
+@Component
+public class RecommendationPipeline {
+
+    public static final String RERANK_STAGE = "rerank";
+
+    private final List<CandidateGenerator> generators;
+    private final StageMetrics stageMetrics;
+    private final long stageBudgetNanos;
+    private final ExecutorService executor;
+
+    public RecommendationPipeline(List<CandidateGenerator> generators,
+                                  StageMetrics stageMetrics,
+                                  @Value("${recommendations.pipeline.stage-budget-ms}") long stageBudgetMs,
+                                  @Value("${recommendations.pipeline.threads}") int threads,
+                                  @Value("${recommendations.pipeline.queue-capacity}") int queueCapacity) {
+        this.generators = generators;
+        this.stageMetrics = stageMetrics;
+        this.stageBudgetNanos = TimeUnit.MILLISECONDS.toNanos(stageBudgetMs);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity));
+    }
+
+    //Возвращает id фильмов итоговой страницы в порядке убывания оценки
+    public List<Long> recommend(long userId, Set<Long> likedFilmIds, int count) {
+        long start = System.nanoTime();
+        long deadline = start + stageBudgetNanos;
+        Map<CandidateGenerator, Future<Map<Long, Double>>> futures = new LinkedHashMap<>();
+        List<FutureTask<Map<Long, Double>>> callerTasks = new ArrayList<>();
+        for (CandidateGenerator generator : generators) {
+            Callable<Map<Long, Double>> task = () -> {
+                long generatorStart = System.nanoTime();
+                Map<Long, Double> candidates = generator.generate(userId, likedFilmIds);
+                stageMetrics.record(StageMetrics.RECOMMENDATIONS, generator.getName(),
+                        System.nanoTime() - generatorStart);
+                return candidates;
+            };
+            try {
+                futures.put(generator, executor.submit(task));
+            } catch (RejectedExecutionException e) {
+                if (generator.isPrimary()) {
+                    FutureTask<Map<Long, Double>> callerTask = new FutureTask<>(task);
+                    callerTasks.add(callerTask);
+                    futures.put(generator, callerTask);
+                } else {
+                    stageMetrics.recordDropped(StageMetrics.RECOMMENDATIONS, generator.getName());
+                    log.warn("Candidate generator {} was dropped: pipeline queue is full", generator.getName());
+                }
+            }
+        }
+        //Запускаются после постановки остальных генераторов в пул, чтобы те работали параллельно
+        callerTasks.forEach(FutureTask::run);
+
+        BitSet likedFilms = new BitSet();
+        likedFilmIds.forEach(filmId -> likedFilms.set(filmId.intValue()));
+        Map<Long, Double> merged = new HashMap<>();
+        futures.forEach((generator, future) -> {
+            Map<Long, Double> candidates = awaitCandidates(generator, future, deadline);
+            mergeCandidates(merged, candidates, likedFilms, generator.getWeight());
+        });
+
+        long rerankStart = System.nanoTime();
+        List<Long> page = merged.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.<Long, Double>comparingByKey()))
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        stageMetrics.record(StageMetrics.RECOMMENDATIONS, RERANK_STAGE, System.nanoTime() - rerankStart);
+        return page;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Map<Long, Double> awaitCandidates(CandidateGenerator generator,
+                                              Future<Map<Long, Double>> future,
+                                              long deadline) {
+        try {
+            if (generator.isPrimary()) {
+                return future.get();
+            }
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            stageMetrics.recordDropped(StageMetrics.RECOMMENDATIONS, generator.getName());
+            log.warn("Candidate generator {} exceeded its budget and was dropped", generator.getName());
+        } catch (ExecutionException e) {
+            stageMetrics.recordDropped(StageMetrics.RECOMMENDATIONS, generator.getName());
+            log.error("Candidate generator {} failed: {}", generator.getName(), e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Map.of();
+    }
+
+    //Оценки каждого генератора нормируются на его максимум, чтобы веса были сопоставимы
+    private void mergeCandidates(Map<Long, Double> merged, Map<Long, Double> candidates,
+                                 BitSet likedFilms, double weight) {
+        double maxScore = candidates.values().stream()
+                .mapToDouble(Double::doubleValue)
+                .max()
+                .orElse(0);
+        if (maxScore <= 0) {
+            return;
+        }
+        candidates.forEach((filmId, score) -> {
+            if (!likedFilms.get(filmId.intValue())) {
+                merged.merge(filmId, weight * score / maxScore, Double::sum);
+            }
+        });
+    }
+}
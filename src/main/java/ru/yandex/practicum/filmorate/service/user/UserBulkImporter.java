@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.service.user;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.RequestType;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.bulk.BulkImporter;
+import ru.yandex.practicum.filmorate.service.validator.UserFieldsValidator;
+
+import javax.validation.Validator;
+import java.util.List;
+
+//Массовый импорт пользователей пакетами по users.bulk.batch-size
+@Service
+public class UserBulkImporter extends BulkImporter<User> {
+
+    private final UserStorage userStorage;
+    private final UserFieldsValidator userFieldsValidator;
+
+    public UserBulkImporter(@Qualifier("H2UserRepository") UserStorage userStorage,
+                            UserFieldsValidator userFieldsValidator,
+                            Validator validator,
+                            ObjectMapper objectMapper,
+                            @Value("${users.bulk.batch-size}") int batchSize) {
+        super(User.class, validator, objectMapper, batchSize);
+        this.userStorage = userStorage;
+        this.userFieldsValidator = userFieldsValidator;
+    }
+
+    @Override
+    protected void checkItem(User user) {
+        userFieldsValidator.checkUserFields(user, RequestType.CREATE);
+    }
+
+    @Override
+    protected void saveBatch(List<User> users) {
+        userStorage.addUsers(users);
+    }
+
+    @Override
+    protected Long getId(User user) {
+        return user.getId();
+    }
+}
@@ -6,10 +6,21 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotExistsException;
 import ru.yandex.practicum.filmorate.model.RequestType;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.user.FriendGraph;
 import ru.yandex.practicum.filmorate.repository.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.filmReview.FilmReviewCache;
+import ru.yandex.practicum.filmorate.service.recommendations.LikesIndex;
 import ru.yandex.practicum.filmorate.service.validator.UserFieldsValidator;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 
 @Service
@@ -18,6 +29,9 @@ public class UserService {
     @Qualifier("H2UserRepository")
     private final UserStorage userStorage;
     private final UserFieldsValidator userFieldsValidator;
+    private final LikesIndex likesIndex;
+    private final FriendGraph friendGraph;
+    private final FilmReviewCache filmReviewCache;
 
     public User addUser(User user) {
         userFieldsValidator.checkUserFields(user, RequestType.CREATE);
@@ -60,6 +74,68 @@ public class UserService {
         return userStorage.getCommonFriends(currentUserId, comparedUserId);
     }
 
+    public List<User> getCommonFriends(Set<Long> userIds) {
+        userIds.forEach(userFieldsValidator::checkIfPresentById);
+
+        long[] ids = userIds.stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+        return userStorage.getUsersByIds(friendGraph.getCommonFriends(ids));
+    }
+
+    //Для несуществующих пользователей число общих друзей равно нулю
+    public Map<Long, Integer> getMutualFriendsCounts(Long currentUserId, List<Long> otherUserIds) {
+        userFieldsValidator.checkIfPresentById(currentUserId);
+
+        long[] ids = otherUserIds.stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+        int[] counts = friendGraph.countCommonFriends(currentUserId, ids);
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            result.put(ids[i], counts[i]);
+        }
+        return result;
+    }
+
+    public List<User> getFriendRequests(Long currentUserId, Long afterUserId, int limit) {
+        userFieldsValidator.checkIfPresentById(currentUserId);
+
+        return userStorage.getFriendRequests(currentUserId, afterUserId, limit);
+    }
+
+    public List<Long> acceptFriendRequests(Long currentUserId, List<Long> requesterIds) {
+        userFieldsValidator.checkIfPresentById(currentUserId);
+
+        return userStorage.acceptFriendRequests(currentUserId, List.copyOf(new LinkedHashSet<>(requesterIds)));
+    }
+
+    public List<Long> declineFriendRequests(Long currentUserId, List<Long> requesterIds) {
+        userFieldsValidator.checkIfPresentById(currentUserId);
+
+        return userStorage.declineFriendRequests(currentUserId, List.copyOf(new LinkedHashSet<>(requesterIds)));
+    }
+
+    public List<User> getFriendSuggestions(Long currentUserId, int count) {
+        userFieldsValidator.checkIfPresentById(currentUserId);
+
+        return getUsersInOrder(friendGraph.suggestFriends(currentUserId, count));
+    }
+
+    public List<User> getFriendshipPath(Long currentUserId, Long otherUserId) {
+        userFieldsValidator.checkIfPresentById(currentUserId);
+        userFieldsValidator.checkIfPresentById(otherUserId);
+
+        int[] path = friendGraph.findPath(currentUserId, otherUserId);
+        if (path.length == 0) {
+            throw new NotExistsException(
+                    "Path",
+                    String.format("Friendship path from user %d to user %d not found", currentUserId, otherUserId)
+            );
+        }
+        return getUsersInOrder(path);
+    }
+
     public User getUserFromStorageById(Long userId) {
         return userStorage.getUserById(userId).orElseThrow(
                 () -> new NotExistsException(
@@ -71,5 +147,16 @@ public class UserService {
     public void removeUserById(Long userId) {
         userFieldsValidator.checkIfPresentById(userId);
         userStorage.removeUserById(userId);
+        likesIndex.removeUser(userId);
+        filmReviewCache.invalidateAll();
+    }
+
+    private List<User> getUsersInOrder(int[] userIds) {
+        Map<Long, User> usersById = userStorage.getUsersByIds(userIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return Arrays.stream(userIds)
+                .mapToObj(id -> usersById.get((long) id))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 }
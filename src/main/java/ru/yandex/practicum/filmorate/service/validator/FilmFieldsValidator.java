@@ -27,21 +27,9 @@ public class FilmFieldsValidator {
 
     public void checkRequestFilm(Film film, RequestType requestType) {
         checkFilmId(film.getId(), requestType);
-        if (requestType.equals(RequestType.UPDATE)) {
-            checkIfPresent(film);
-        }
         checkFilmReleaseDate(film.getReleaseDate());
     }
 
-    public void checkIfPresent(Film film) {
-        if (filmStorage.getFilmByIdFull(film.getId()).isEmpty()) {
-            throw new NotExistsException(
-                    "Film",
-                    String.format("Film with id %d does not exist", film.getId())
-            );
-        }
-    }
-
     public void checkIfPresentById(Long filmId) {
         if (filmStorage.getFilmByIdFull(filmId).isEmpty()) {
             throw new NotExistsException(
@@ -9,12 +9,20 @@ CREATE TABLE IF NOT EXISTS USERS (
 CREATE TABLE IF NOT EXISTS USER_FRIEND (
                                USER_ID INTEGER,
                                FRIEND_ID INTEGER,
-                               CONFIRMATION_STATUS VARCHAR NOT NULL,
+                               CONFIRMATION_STATUS TINYINT NOT NULL,
                                PRIMARY KEY (USER_ID, FRIEND_ID),
                                CONSTRAINT fk__user_id__users_user_id FOREIGN KEY (USER_ID) REFERENCES USERS (USER_ID) ON DELETE CASCADE,
                                CONSTRAINT fk__friend_id__users_user_id FOREIGN KEY (FRIEND_ID) REFERENCES USERS (USER_ID) ON DELETE CASCADE
 );
 
+-- Базы, созданные до перехода на коды статусов: названия статусов заменяются кодами, затем меняется тип колонки
+UPDATE USER_FRIEND
+SET CONFIRMATION_STATUS = CASE CAST(CONFIRMATION_STATUS AS VARCHAR) WHEN 'CONFIRMED' THEN 1 ELSE 0 END
+WHERE CAST(CONFIRMATION_STATUS AS VARCHAR) IN ('CONFIRMED', 'WAITING_FOR_APPROVAL');
+ALTER TABLE USER_FRIEND ALTER COLUMN CONFIRMATION_STATUS SET DATA TYPE TINYINT;
+
+CREATE INDEX IF NOT EXISTS idx__user_friend__user_id__status ON USER_FRIEND (USER_ID, CONFIRMATION_STATUS, FRIEND_ID);
+
 CREATE TABLE IF NOT EXISTS GENRE (
                          GENRE_ID INTEGER PRIMARY KEY,
                          GENRE_NAME VARCHAR
@@ -75,6 +83,9 @@ CREATE TABLE IF NOT EXISTS REVIEW (
                                FILM_ID INTEGER,
                                CONTENT VARCHAR(5000) NOT NULL,
                                IS_POSITIVE BOOLEAN NOT NULL,
+                               USEFUL INTEGER DEFAULT 0 NOT NULL,
+                               LIKES_COUNT INTEGER DEFAULT 0 NOT NULL,
+                               DISLIKES_COUNT INTEGER DEFAULT 0 NOT NULL,
                                CONSTRAINT fk__review__users FOREIGN KEY (USER_ID)
                                     REFERENCES USERS (USER_ID) ON DELETE CASCADE,
                                CONSTRAINT fk__review__film FOREIGN KEY (FILM_ID)
@@ -103,6 +114,25 @@ CREATE TABLE IF NOT EXISTS USER_REVIEW_DISLIKES (
                                    ON DELETE CASCADE
 );
 
+-- Базы, созданные до появления счётчиков оценок: колонки добавляются пустыми и один раз заполняются по таблицам оценок
+ALTER TABLE REVIEW ADD COLUMN IF NOT EXISTS USEFUL INTEGER;
+ALTER TABLE REVIEW ADD COLUMN IF NOT EXISTS LIKES_COUNT INTEGER;
+ALTER TABLE REVIEW ADD COLUMN IF NOT EXISTS DISLIKES_COUNT INTEGER;
+UPDATE REVIEW r
+SET LIKES_COUNT = (SELECT COUNT(*) FROM USER_REVIEW_LIKES l WHERE l.REVIEW_ID = r.REVIEW_ID),
+    DISLIKES_COUNT = (SELECT COUNT(*) FROM USER_REVIEW_DISLIKES d WHERE d.REVIEW_ID = r.REVIEW_ID)
+WHERE r.USEFUL IS NULL;
+UPDATE REVIEW SET USEFUL = LIKES_COUNT - DISLIKES_COUNT WHERE USEFUL IS NULL;
+ALTER TABLE REVIEW ALTER COLUMN USEFUL SET DEFAULT 0;
+ALTER TABLE REVIEW ALTER COLUMN USEFUL SET NOT NULL;
+ALTER TABLE REVIEW ALTER COLUMN LIKES_COUNT SET DEFAULT 0;
+ALTER TABLE REVIEW ALTER COLUMN LIKES_COUNT SET NOT NULL;
+ALTER TABLE REVIEW ALTER COLUMN DISLIKES_COUNT SET DEFAULT 0;
+ALTER TABLE REVIEW ALTER COLUMN DISLIKES_COUNT SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx__review__film_id__useful ON REVIEW (FILM_ID, USEFUL DESC, REVIEW_ID);
+CREATE INDEX IF NOT EXISTS idx__review__useful ON REVIEW (USEFUL DESC, REVIEW_ID);
+
 CREATE TABLE IF NOT EXISTS FEED (
                         TIMESTAMP BIGINT,
                         USERID INTEGER,
@@ -111,3 +141,19 @@ CREATE TABLE IF NOT EXISTS FEED (
                         EVENTID INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
                         ENTITYID INTEGER
 );
+
+CREATE INDEX IF NOT EXISTS idx__feed__userid__eventid ON FEED (USERID, EVENTID DESC);
+CREATE INDEX IF NOT EXISTS idx__feed__timestamp ON FEED (TIMESTAMP);
+
+CREATE TABLE IF NOT EXISTS FEED_OUTBOX (
+                        OUTBOX_ID BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                        TIMESTAMP BIGINT,
+                        USERID INTEGER,
+                        EVENTTYPE  VARCHAR  NOT NULL,
+                        OPERATION VARCHAR  NOT NULL,
+                        ENTITYID INTEGER
+);
+
+CREATE INDEX IF NOT EXISTS idx__feed_outbox__userid ON FEED_OUTBOX (USERID);
+
+CREATE ALIAS IF NOT EXISTS UPSERT_FILM FOR 'ru.yandex.practicum.filmorate.repository.film.h2.FilmProcedures.upsertFilm';
@@ -1,34 +1,65 @@
 package ru.yandex.practicum.filmorate;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.model.feed.CompactionBatch;
 import ru.yandex.practicum.filmorate.model.feed.EventType;
 import ru.yandex.practicum.filmorate.model.feed.Feed;
 import ru.yandex.practicum.filmorate.model.feed.OperationType;
 import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.repository.feed.h2.FeedArchive;
 import ru.yandex.practicum.filmorate.repository.film.h2.FilmRepository;
 import ru.yandex.practicum.filmorate.repository.filmReview.FilmReviewStorage;
 import ru.yandex.practicum.filmorate.repository.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.feed.FeedCache;
+import ru.yandex.practicum.filmorate.service.feed.FeedCompactor;
+import ru.yandex.practicum.filmorate.service.feed.FeedOutboxFlusher;
+import ru.yandex.practicum.filmorate.service.feed.TimelineFanout;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class FeedStorageTest {
+    private static final int FEED_PAGE_SIZE = 100;
+    @TempDir
+    static Path archiveDir;
+
     private final FeedStorage feedStorage;
     private final FilmReviewStorage filmReviewStorage;
     @Qualifier("H2UserRepository")
@@ -37,6 +68,17 @@ public class FeedStorageTest {
     @Qualifier("H2FilmRepository")
     private final FilmRepository filmRepository;
     private final FilmService filmService;
+    private final FeedOutboxFlusher feedOutboxFlusher;
+    private final FeedCompactor feedCompactor;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final FeedCache feedCache;
+    private final TimelineFanout timelineFanout;
+
+    @DynamicPropertySource
+    static void archiveProperties(DynamicPropertyRegistry registry) {
+        registry.add("feed.archive.path", () -> archiveDir.toString());
+    }
 
     @Test
     @Order(1)
@@ -57,14 +99,14 @@ public class FeedStorageTest {
         userStorage.addUser(anotherUserTest);
         userStorage.addFriendToUser(1L, 2L);
         Feed feed = Feed.builder()
-                .timestamp(feedStorage.getUserFeed(1L).get(0).getTimestamp())
+                .timestamp(getUserFeed().get(0).getTimestamp())
                 .userId(1L)
                 .eventType(EventType.FRIEND)
                 .operation(OperationType.ADD)
                 .entityId(2L)
                 .eventId(1L)
                 .build();
-        assertEquals(feedStorage.getUserFeed(1L).get(0), feed);
+        assertEquals(getUserFeed().get(0), feed);
     }
 
 
@@ -73,14 +115,14 @@ public class FeedStorageTest {
     public void removeFriendFeedTest() {
         userStorage.removeFriendFromUser(1L, 2L);
         Feed feed = Feed.builder()
-                .timestamp(feedStorage.getUserFeed(1L).get(1).getTimestamp())
+                .timestamp(getUserFeed().get(1).getTimestamp())
                 .userId(1L)
                 .eventType(EventType.FRIEND)
                 .operation(OperationType.REMOVE)
                 .entityId(2L)
                 .eventId(2L)
                 .build();
-        assertEquals(feedStorage.getUserFeed(1L).get(1), feed);
+        assertEquals(getUserFeed().get(1), feed);
     }
 
     @Test
@@ -97,14 +139,14 @@ public class FeedStorageTest {
         filmRepository.addFilm(film);
         filmService.giveLikeFromUserToFilm(1L, 1L);
         Feed feed = Feed.builder()
-                .timestamp(feedStorage.getUserFeed(1L).get(2).getTimestamp())
+                .timestamp(getUserFeed().get(2).getTimestamp())
                 .userId(1L)
                 .eventType(EventType.LIKE)
                 .operation(OperationType.ADD)
                 .entityId(1L)
                 .eventId(3L)
                 .build();
-        assertEquals(feedStorage.getUserFeed(1L).get(2), feed);
+        assertEquals(getUserFeed().get(2), feed);
     }
 
     @Test
@@ -112,14 +154,14 @@ public class FeedStorageTest {
     public void removeLikeFeedTest() {
         filmService.removeUserLikeFromFilm(1L, 1L);
         Feed feed = Feed.builder()
-                .timestamp(feedStorage.getUserFeed(1L).get(3).getTimestamp())
+                .timestamp(getUserFeed().get(3).getTimestamp())
                 .userId(1L)
                 .eventType(EventType.LIKE)
                 .operation(OperationType.REMOVE)
                 .entityId(1L)
                 .eventId(4L)
                 .build();
-        assertEquals(feedStorage.getUserFeed(1L).get(3), feed);
+        assertEquals(getUserFeed().get(3), feed);
     }
 
     @Test
@@ -133,14 +175,14 @@ public class FeedStorageTest {
                 .build();
         filmReviewStorage.addReview(review);
         Feed feed = Feed.builder()
-                .timestamp(feedStorage.getUserFeed(1L).get(4).getTimestamp())
+                .timestamp(getUserFeed().get(4).getTimestamp())
                 .userId(1L)
                 .eventType(EventType.REVIEW)
                 .operation(OperationType.ADD)
                 .entityId(1L)
                 .eventId(5L)
                 .build();
-        assertEquals(feedStorage.getUserFeed(1L).get(4), feed);
+        assertEquals(getUserFeed().get(4), feed);
     }
 
     @Test
@@ -155,14 +197,14 @@ public class FeedStorageTest {
                 .build();
         filmReviewStorage.updateReview(updateReview);
         Feed feed = Feed.builder()
-                .timestamp(feedStorage.getUserFeed(1L).get(5).getTimestamp())
+                .timestamp(getUserFeed().get(5).getTimestamp())
                 .userId(1L)
                 .eventType(EventType.REVIEW)
                 .operation(OperationType.UPDATE)
                 .entityId(1L)
                 .eventId(6L)
                 .build();
-        assertEquals(feedStorage.getUserFeed(1L).get(5), feed);
+        assertEquals(getUserFeed().get(5), feed);
     }
 
     @Test
@@ -170,13 +212,297 @@ public class FeedStorageTest {
     public void removeReviewFeedTest() {
         filmReviewStorage.deleteReview(1L);
         Feed feed = Feed.builder()
-                .timestamp(feedStorage.getUserFeed(1L).get(6).getTimestamp())
+                .timestamp(getUserFeed().get(6).getTimestamp())
                 .userId(1L)
                 .eventType(EventType.REVIEW)
                 .operation(OperationType.REMOVE)
                 .entityId(1L)
                 .eventId(7L)
                 .build();
-        assertEquals(feedStorage.getUserFeed(1L).get(6), feed);
+        assertEquals(getUserFeed().get(6), feed);
+    }
+
+    @Test
+    @Order(8)
+    public void shouldReturnFeedPagesBeforeCursorFilteredByEventType() {
+        feedOutboxFlusher.flush();
+        List<Long> lastPage = feedStorage.getUserFeed(1L, null, 2, null).stream()
+                .map(Feed::getEventId)
+                .collect(Collectors.toList());
+        List<Long> previousPage = feedStorage.getUserFeed(1L, lastPage.get(0), 2, null).stream()
+                .map(Feed::getEventId)
+                .collect(Collectors.toList());
+        List<Long> likes = feedStorage.getUserFeed(1L, null, FEED_PAGE_SIZE, EventType.LIKE).stream()
+                .map(Feed::getEventId)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of(6L, 7L), lastPage);
+        assertEquals(List.of(4L, 5L), previousPage);
+        assertEquals(List.of(3L, 4L), likes);
+    }
+
+    @Test
+    @Order(9)
+    public void shouldNotMoveEventToFeedWhenTransactionRolledBack() {
+        int feedSize = getUserFeed().size();
+        transactionTemplate.executeWithoutResult(status -> {
+            filmReviewStorage.addReview(FilmReview.builder()
+                    .filmId(1L)
+                    .userId(1L)
+                    .content("Rolled back")
+                    .isPositive(false)
+                    .build());
+            status.setRollbackOnly();
+        });
+
+        assertEquals(feedSize, getUserFeed().size());
+    }
+
+    @Test
+    @Order(10)
+    public void shouldCompactCancelledEventsAndReadArchivedOnes() {
+        addOldLikeEvent(OperationType.ADD, 1_000L);
+        addOldLikeEvent(OperationType.REMOVE, 2_000L);
+        addOldLikeEvent(OperationType.ADD, 3_000L);
+        feedOutboxFlusher.flush();
+
+        int compacted = feedCompactor.compact(10_000L);
+        int archived = feedCompactor.archive(10_000L);
+        List<Feed> archivedFeed = feedStorage.getUserFeed(2L, null, FEED_PAGE_SIZE, null);
+
+        assertEquals(2, compacted);
+        assertEquals(1, archived);
+        assertEquals(1, archivedFeed.size());
+        assertEquals(OperationType.ADD, archivedFeed.get(0).getOperation());
+        assertEquals(3_000L, archivedFeed.get(0).getTimestamp());
+        assertTrue(Files.exists(archiveDir.resolve("feed-1970-01.jsonl.gz")));
+    }
+
+    @Test
+    @Order(11)
+    public void shouldFindOutboxEventsOnlyOfTheirUser() {
+        transactionTemplate.executeWithoutResult(status -> {
+            addOldLikeEvent(OperationType.ADD, 4_000L);
+
+            assertTrue(feedStorage.hasOutboxEvents(2L));
+            assertFalse(feedStorage.hasOutboxEvents(1L));
+            status.setRollbackOnly();
+        });
+    }
+
+    @Test
+    @Order(12)
+    public void shouldReadArchiveFilesOnlyForUsersWithOlderArchivedEvents(@TempDir Path dir) throws IOException {
+        new FeedArchive(dir.toString(), objectMapper).append(List.of(createArchivedEvent(2L, 10L),
+                createArchivedEvent(2L, 11L)));
+        //Любое чтение испорченного файла завершится ошибкой
+        Files.write(dir.resolve("feed-1970-01.jsonl.gz"), new byte[]{1, 2, 3});
+        FeedArchive archive = new FeedArchive(dir.toString(), objectMapper);
+
+        assertTrue(archive.getUserFeed(1L, null, FEED_PAGE_SIZE, null).isEmpty());
+        assertTrue(archive.getUserFeed(2L, 10L, FEED_PAGE_SIZE, null).isEmpty());
+        assertThrows(UncheckedIOException.class, () -> archive.getUserFeed(2L, 11L, FEED_PAGE_SIZE, null));
+    }
+
+    @Test
+    @Order(13)
+    public void shouldRebuildMissingArchiveIndex(@TempDir Path dir) throws IOException {
+        new FeedArchive(dir.toString(), objectMapper).append(List.of(createArchivedEvent(2L, 10L),
+                createArchivedEvent(3L, 11L)));
+        Files.delete(dir.resolve("feed-1970-01.idx"));
+        FeedArchive archive = new FeedArchive(dir.toString(), objectMapper);
+
+        List<Feed> archivedFeed = archive.getUserFeed(2L, null, FEED_PAGE_SIZE, null);
+
+        assertEquals(1, archivedFeed.size());
+        assertEquals(10L, archivedFeed.get(0).getEventId());
+        assertTrue(Files.exists(dir.resolve("feed-1970-01.idx")));
+    }
+
+    @Test
+    @Order(14)
+    public void shouldCompactOnlyEventsCancelledAfterPreviousCompaction() {
+        addOldLikeEvent(OperationType.ADD, 4_000L);
+        addOldLikeEvent(OperationType.REMOVE, 5_000L);
+        addOldLikeEvent(OperationType.ADD, 6_000L);
+        feedOutboxFlusher.flush();
+
+        int compacted = feedCompactor.compact(10_000L);
+        addOldLikeEvent(OperationType.REMOVE, 7_000L);
+        feedOutboxFlusher.flush();
+        int compactedAgain = feedCompactor.compact(10_000L);
+        int repeated = feedCompactor.compact(10_000L);
+
+        assertEquals(2, compacted);
+        assertEquals(2, compactedAgain);
+        assertEquals(0, repeated);
+        assertTrue(feedStorage.getUserFeed(2L, null, FEED_PAGE_SIZE, null).stream()
+                .noneMatch(event -> event.getTimestamp() >= 4_000L && event.getTimestamp() <= 7_000L));
+    }
+
+    @Test
+    @Order(15)
+    public void shouldDropCompactedEventsFromFeedCacheAndTimelines() {
+        userStorage.addFriendToUser(1L, 2L);
+        addOldLikeEvent(OperationType.ADD, 8_000L);
+        addOldLikeEvent(OperationType.REMOVE, 9_000L);
+        feedOutboxFlusher.flush();
+        boolean cached = containsCompactedEvents(feedCache.getUserFeed(2L, null, FEED_PAGE_SIZE, null));
+        boolean inTimeline = containsCompactedEvents(timelineFanout.getTimeline(1L, FEED_PAGE_SIZE));
+
+        int compacted = feedCompactor.compact(10_000L);
+
+        assertTrue(cached && inTimeline);
+        assertEquals(2, compacted);
+        assertFalse(containsCompactedEvents(feedCache.getUserFeed(2L, null, FEED_PAGE_SIZE, null)));
+        assertFalse(containsCompactedEvents(timelineFanout.getTimeline(1L, FEED_PAGE_SIZE)));
+    }
+
+    @Test
+    @Order(16)
+    public void shouldReadArchiveWhileEventsAreAppended(@TempDir Path dir) throws Exception {
+        FeedArchive archive = new FeedArchive(dir.toString(), objectMapper);
+        archive.append(List.of(createArchivedEvent(2L, 1L)));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> appends = executor.submit(() -> {
+                for (long batch = 1; batch <= 20; batch++) {
+                    List<Feed> events = new ArrayList<>();
+                    for (long i = 0; i < 5_000; i++) {
+                        events.add(createArchivedEvent(2L, batch * 10_000 + i));
+                    }
+                    archive.append(events);
+                }
+            });
+            Future<Integer> reads = executor.submit(() -> {
+                int count = 0;
+                while (!appends.isDone()) {
+                    archive.getUserFeed(2L, null, FEED_PAGE_SIZE, null);
+                    count++;
+                }
+                return count;
+            });
+
+            appends.get(1, TimeUnit.MINUTES);
+
+            assertTrue(reads.get(1, TimeUnit.MINUTES) > 0);
+            assertEquals(204_999L, archive.getUserFeed(2L, null, FEED_PAGE_SIZE, null)
+                    .get(FEED_PAGE_SIZE - 1).getEventId());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Order(17)
+    public void shouldDeliverEventsToFeedCacheWhileFeedIsLoading() throws Exception {
+        CountDownLatch loadStarted = new CountDownLatch(1);
+        CountDownLatch loadReleased = new CountDownLatch(1);
+        FeedCache cache = new FeedCache(new BlockingFeedStorage(feedStorage, loadStarted, loadReleased),
+                FEED_PAGE_SIZE, 10_000);
+        Feed event = createArchivedEvent(2L, 1_000_000L);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Feed>> loaded = executor.submit(() -> cache.getUserFeed(2L, null, FEED_PAGE_SIZE, null));
+            assertTrue(loadStarted.await(5, TimeUnit.SECONDS));
+
+            //Раздача не ждёт загрузку буфера
+            executor.submit(() -> cache.onEvents(List.of(event))).get(5, TimeUnit.SECONDS);
+            loadReleased.countDown();
+            List<Feed> feed = loaded.get(5, TimeUnit.SECONDS);
+            List<Feed> cached = cache.getUserFeed(2L, null, FEED_PAGE_SIZE, null);
+
+            assertEquals(event, feed.get(feed.size() - 1));
+            assertEquals(feed, cached);
+            assertEquals(1L, cache.getStats().get("users"));
+        } finally {
+            loadReleased.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private void addOldLikeEvent(OperationType operation, long timestamp) {
+        feedStorage.addEvent(Feed.builder()
+                .timestamp(timestamp)
+                .userId(2L)
+                .eventType(EventType.LIKE)
+                .operation(operation)
+                .entityId(1L)
+                .build());
+    }
+
+    private Feed createArchivedEvent(Long userId, Long eventId) {
+        return Feed.builder()
+                .timestamp(1_000L)
+                .userId(userId)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .entityId(1L)
+                .eventId(eventId)
+                .build();
+    }
+
+    private boolean containsCompactedEvents(List<Feed> feed) {
+        return feed.stream().anyMatch(event -> event.getTimestamp() == 8_000L || event.getTimestamp() == 9_000L);
+    }
+
+    private List<Feed> getUserFeed() {
+        feedOutboxFlusher.flush();
+        return feedStorage.getUserFeed(1L, null, FEED_PAGE_SIZE, null);
+    }
+
+    //Задерживает чтение ленты, пока тест не отпустит загрузку
+    private static class BlockingFeedStorage implements FeedStorage {
+
+        private final FeedStorage feedStorage;
+        private final CountDownLatch loadStarted;
+        private final CountDownLatch loadReleased;
+
+        BlockingFeedStorage(FeedStorage feedStorage, CountDownLatch loadStarted, CountDownLatch loadReleased) {
+            this.feedStorage = feedStorage;
+            this.loadStarted = loadStarted;
+            this.loadReleased = loadReleased;
+        }
+
+        @Override
+        public void addEvent(Feed feed) {
+            feedStorage.addEvent(feed);
+        }
+
+        @Override
+        public List<Feed> moveOutboxToFeed(int limit) {
+            return feedStorage.moveOutboxToFeed(limit);
+        }
+
+        @Override
+        public boolean hasOutboxEvents(Long userId) {
+            return feedStorage.hasOutboxEvents(userId);
+        }
+
+        @Override
+        public List<Feed> getUserFeed(Long userId, Long beforeEventId, int limit, EventType eventType) {
+            loadStarted.countDown();
+            try {
+                loadReleased.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return feedStorage.getUserFeed(userId, beforeEventId, limit, eventType);
+        }
+
+        @Override
+        public List<Feed> getLatestEvents(Collection<Long> userIds, int limit) {
+            return feedStorage.getLatestEvents(userIds, limit);
+        }
+
+        @Override
+        public CompactionBatch compactCancelledEvents(long afterEventId, long olderThan, int limit) {
+            return feedStorage.compactCancelledEvents(afterEventId, olderThan, limit);
+        }
+
+        @Override
+        public List<Feed> archiveEvents(long olderThan, int limit) {
+            return feedStorage.archiveEvents(olderThan, limit);
+        }
     }
 }
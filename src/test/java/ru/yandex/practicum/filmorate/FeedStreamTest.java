@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.feed.FeedStreamHub;
+import ru.yandex.practicum.filmorate.util.TestDataProducer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Тысячи настоящих SSE-соединений к /users/{id}/feed/stream при пуле Tomcat в несколько потоков:
+если бы соединение занимало поток, обычный запрос не был бы обслужен, а события не дошли бы до потоков
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "server.tomcat.threads.max=" + FeedStreamTest.TOMCAT_THREADS,
+        "server.tomcat.threads.min-spare=1",
+        "server.tomcat.accept-count=1000"
+})
+@AutoConfigureTestDatabase
+public class FeedStreamTest {
+
+    static final int TOMCAT_THREADS = 4;
+    private static final int STREAMS_COUNT = 3000;
+    private static final String HOST = "http://localhost:";
+
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+    @Autowired
+    @Qualifier("H2UserRepository")
+    private UserStorage userStorage;
+    @Autowired
+    private TestDataProducer testDataProducer;
+    @Autowired
+    private FeedStreamHub feedStreamHub;
+    @Value(value = "${local.server.port}")
+    private int port;
+
+    @Test
+    public void shouldServeThousandsOfIdleStreamsWithFewTomcatThreads() throws InterruptedException {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long friendId = testDataProducer.addDefaultUserToDB();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create(String.format("%s%s/users/%d/feed/stream", HOST, port, userId))).build();
+        CountDownLatch received = new CountDownLatch(STREAMS_COUNT);
+        List<Flow.Subscription> streams = new CopyOnWriteArrayList<>();
+        try {
+            for (int i = 0; i < STREAMS_COUNT; i++) {
+                client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(
+                        new EventSubscriber(friendId, received, streams)));
+            }
+            long deadline = System.currentTimeMillis() + 60_000;
+            while (feedStreamHub.getSubscribersCount() < STREAMS_COUNT && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            int subscribersCount = feedStreamHub.getSubscribersCount();
+
+            ResponseEntity<User> response = testRestTemplate.getForEntity(
+                    URI.create(String.format("%s%s/users/%d", HOST, port, userId)), User.class);
+            userStorage.addFriendToUser(userId, friendId);
+            boolean delivered = received.await(30, TimeUnit.SECONDS);
+
+            assertEquals(STREAMS_COUNT, subscribersCount, "Streams not opened");
+            assertEquals(HttpStatus.OK, response.getStatusCode(), "Request not served while streams are open");
+            assertEquals(userId, response.getBody().getId(), "Wrong user returned");
+            assertTrue(delivered, "Event not delivered to every stream, missing: " + received.getCount());
+        } finally {
+            streams.forEach(Flow.Subscription::cancel);
+        }
+    }
+
+    //Считает потоки, получившие событие о дружбе с friendId
+    private static class EventSubscriber implements Flow.Subscriber<String> {
+
+        private final String expectedData;
+        private final CountDownLatch received;
+        private final List<Flow.Subscription> streams;
+
+        EventSubscriber(Long friendId, CountDownLatch received, List<Flow.Subscription> streams) {
+            this.expectedData = "\"entityId\":" + friendId;
+            this.received = received;
+            this.streams = streams;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            streams.add(subscription);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(String line) {
+            if (line.startsWith("data:") && line.contains(expectedData)) {
+                received.countDown();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
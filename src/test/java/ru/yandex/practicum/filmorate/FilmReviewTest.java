@@ -12,11 +12,15 @@ import org.springframework.http.*;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.model.FilmReview;
 import ru.yandex.practicum.filmorate.repository.filmReview.FilmReviewStorage;
+import ru.yandex.practicum.filmorate.service.filmReview.FilmReviewRanking;
 import ru.yandex.practicum.filmorate.util.FilmReviewTestDataProducer;
 import ru.yandex.practicum.filmorate.util.TestDataProducer;
 
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -602,6 +606,34 @@ public class FilmReviewTest {
         assertEquals(1, requestedFilmReview.getUseful(), "Useful is wrong");
     }
 
+    @Test
+    public void shouldRecalculateUsefulWhenRatingUserIsDeleted() {
+        FilmReview filmReview = filmReviewTestDataProducer.getValidPositiveReview();
+        Long filmReviewId = filmReviewStorage.addReview(filmReview).getReviewId();
+        Long userId1 = testDataProducer.addDefaultUserToDB();
+        Long userId2 = testDataProducer.addDefaultUserToDB();
+        Long userId3 = testDataProducer.addDefaultUserToDB();
+        filmReviewStorage.addLikeToReview(filmReviewId, userId1);
+        filmReviewStorage.addLikeToReview(filmReviewId, userId2);
+        filmReviewStorage.addDislikeToReview(filmReviewId, userId3);
+
+        testRestTemplate.exchange(
+                URI.create(String.format("%s%s/users/%d", HOST, port, userId1)),
+                HttpMethod.DELETE,
+                null,
+                String.class
+        );
+        testRestTemplate.exchange(
+                URI.create(String.format("%s%s/users/%d", HOST, port, userId3)),
+                HttpMethod.DELETE,
+                null,
+                String.class
+        );
+
+        FilmReview requestedFilmReview = filmReviewStorage.getReviewById(filmReviewId).get();
+        assertEquals(1, requestedFilmReview.getUseful(), "Useful is wrong");
+    }
+
     // =============================== GET /reviews?filmId={filmId}&count={count} ======================================
 
     @Test
@@ -746,6 +778,109 @@ public class FilmReviewTest {
         assertEquals(HttpStatus.valueOf(400), response.getStatusCode(), "Wrong status code");
     }
 
+    @Test
+    public void shouldPageFilmReviewsByCursor() {
+        Long filmId = filmReviewTestDataProducer.createReviewsWithUsefulToFilmAndReturnFilmId(5);
+        //Два отзыва с одинаковым useful проверяют порядок по reviewId на границе страниц
+        for (int i = 0; i < 2; i++) {
+            filmReviewStorage.addReview(FilmReview.builder()
+                    .filmId(filmId)
+                    .userId(testDataProducer.addDefaultUserToDB())
+                    .content("Some content")
+                    .isPositive(false)
+                    .build());
+        }
+        List<FilmReview> expectedFilmReviews = filmReviewStorage.getFilmReviews(filmId, null, null, 7);
+
+        List<FilmReview> pagedFilmReviews = new ArrayList<>();
+        List<FilmReview> page = testRestTemplate.exchange(
+                getGetReviewsByFilmIdWithCountURI(filmId, 3),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<FilmReview>>() {
+                }
+        ).getBody();
+        while (!page.isEmpty()) {
+            pagedFilmReviews.addAll(page);
+            FilmReview last = page.get(page.size() - 1);
+            page = testRestTemplate.exchange(
+                    URI.create(String.format("%s&afterUseful=%d&afterReviewId=%d",
+                            getGetReviewsByFilmIdWithCountURI(filmId, 3), last.getUseful(), last.getReviewId())),
+                    HttpMethod.GET,
+                    null,
+                    new ParameterizedTypeReference<List<FilmReview>>() {
+                    }
+            ).getBody();
+        }
+
+        assertEquals(expectedFilmReviews, pagedFilmReviews, "Pages differ from full review list");
+    }
+
+    @Test
+    public void shouldReturn400IfCursorIsIncompleteWhenGettingReviews() {
+        ResponseEntity<String> response = testRestTemplate.exchange(
+                URI.create(String.format("%s%s/reviews?afterUseful=%d", HOST, port, 1)),
+                HttpMethod.GET,
+                null,
+                String.class
+        );
+
+        assertEquals(HttpStatus.valueOf(400), response.getStatusCode(), "Wrong status code");
+    }
+
+    @Test
+    public void shouldServeUpdatedFilmReviewsFromCache() {
+        Long filmId = filmReviewTestDataProducer.createReviewsWithUsefulToFilmAndReturnFilmId(3);
+        ParameterizedTypeReference<List<FilmReview>> reviewsType = new ParameterizedTypeReference<>() {
+        };
+        List<FilmReview> initialFilmReviews = testRestTemplate.exchange(
+                getGetReviewsByFilmIdWithCountURI(filmId, 3), HttpMethod.GET, null, reviewsType).getBody();
+        Long leastUsefulReviewId = initialFilmReviews.get(2).getReviewId();
+        for (int i = 0; i < 3; i++) {
+            testRestTemplate.exchange(getReviewLikesURI(leastUsefulReviewId, testDataProducer.addDefaultUserToDB()),
+                    HttpMethod.PUT, null, String.class);
+        }
+        testRestTemplate.exchange(getDeleteOrGetByURI(initialFilmReviews.get(0).getReviewId()),
+                HttpMethod.DELETE, null, String.class);
+
+        List<FilmReview> requestedFilmReviews = testRestTemplate.exchange(
+                getGetReviewsByFilmIdWithCountURI(filmId, 3), HttpMethod.GET, null, reviewsType).getBody();
+        Map<String, Long> stats = testRestTemplate.exchange(
+                URI.create(HOST + port + "/reviews/cache/stats"),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<Map<String, Long>>() {
+                }
+        ).getBody();
+
+        assertEquals(2, requestedFilmReviews.size(), "Reviews number is wrong");
+        assertEquals(leastUsefulReviewId, requestedFilmReviews.get(0).getReviewId(), "Review sort is wrong");
+        assertEquals(4, requestedFilmReviews.get(0).getUseful(), "Useful is wrong");
+        assertEquals(filmReviewStorage.getFilmReviews(filmId, null, null, 3), requestedFilmReviews,
+                "Cached reviews differ from database");
+        assertTrue(stats.get("hits") >= 1, "Reviews should be served from cache");
+    }
+
+    @Test
+    public void shouldKeepLikedLastReviewInFullRanking() {
+        FilmReviewRanking ranking = new FilmReviewRanking(3);
+        ranking.load(List.of(createRankedReview(1L, 5), createRankedReview(2L, 4), createRankedReview(3L, 3),
+                createRankedReview(4L, 2)));
+
+        //Последний в рейтинге отзыв получает лайк и встаёт вровень с предпоследним, но выше вытесненного
+        ranking.offer(createRankedReview(3L, 4));
+
+        assertFalse(ranking.isComplete(), "Overflowed ranking should be incomplete");
+        assertEquals(List.of(1L, 2L, 3L), ranking.getPage(null, 3).stream()
+                .map(FilmReview::getReviewId)
+                .collect(Collectors.toList()), "Liked review dropped from ranking");
+        //Вытесненный отзыв, поднявшийся выше границы, возвращается в рейтинг
+        ranking.offer(createRankedReview(4L, 6));
+        assertEquals(List.of(4L, 1L, 2L), ranking.getPage(null, 3).stream()
+                .map(FilmReview::getReviewId)
+                .collect(Collectors.toList()), "Review above boundary not ranked");
+    }
+
     // =============================== PUT /reviews/{id}/like/{userId} ======================================
 
     @Test
@@ -1109,4 +1244,10 @@ public class FilmReviewTest {
         assertEquals(HttpStatus.valueOf(404), response.getStatusCode(), "Wrong status code");
     }
 
+    private FilmReview createRankedReview(Long reviewId, int useful) {
+        return FilmReview.builder()
+                .reviewId(reviewId)
+                .useful(useful)
+                .build();
+    }
 }
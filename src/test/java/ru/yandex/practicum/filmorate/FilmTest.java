@@ -11,12 +11,15 @@ import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.BulkImportResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.RatingMPA;
 import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
 import ru.yandex.practicum.filmorate.repository.film.h2.RatingMpaDao;
 import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.recommendations.LikesIndex;
 import ru.yandex.practicum.filmorate.service.recommendations.RecommendationsService;
 import ru.yandex.practicum.filmorate.util.TestDataProducer;
 
@@ -24,6 +27,7 @@ import java.net.URI;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,6 +52,10 @@ public class FilmTest {
     private RecommendationsService recommendationsService;
     @Autowired
     private TestDataProducer testDataProducer;
+    @Autowired
+    private LikesIndex likesIndex;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
     @Value(value = "${local.server.port}")
     private int port;
     private URI filmsUrl;
@@ -71,6 +79,10 @@ public class FilmTest {
         );
     }
 
+    private URI createImportFilmsUrl() {
+        return URI.create(String.format("%s%s/films/bulk", HOST, port));
+    }
+
     private URI createGiveOrDeleteLikeUrl(Long filmId, Long userId) {
         return URI.create(
                 String.format("%s%s/films/%d/like/%d", HOST, port, filmId, userId)
@@ -131,6 +143,18 @@ public class FilmTest {
         );
     }
 
+    private URI createGetGroupRecommendations(String userIds) {
+        return URI.create(
+                String.format("%s%s/recommendations/group?userIds=%s", HOST, port, userIds)
+        );
+    }
+
+    private URI createGetSimilarFilms(Long filmId, String mode, int count) {
+        return URI.create(
+                String.format("%s%s/films/%d/similar?mode=%s&count=%d", HOST, port, filmId, mode, count)
+        );
+    }
+
 
     // =============================== POST /films ======================================
 
@@ -477,6 +501,31 @@ public class FilmTest {
         assertEquals(initialFilm.getMpa().getId(), updatedFilm.getMpa().getId(), "Field is not updated");
     }
 
+    @Test
+    public void shouldUpdateFilmWithoutChanges() {
+        Film initialFilm = testDataProducer.getFilmWithGenres();
+        Long createdFilmId = filmStorage.addFilm(initialFilm).getId();
+        initialFilm.setId(createdFilmId);
+        HttpEntity<Film> entity = new HttpEntity<>(initialFilm, applicationJsonHeaders);
+
+        ResponseEntity<Film> response = testRestTemplate.exchange(filmsUrl, HttpMethod.PUT, entity, Film.class);
+
+        assertEquals(HttpStatus.valueOf(200), response.getStatusCode(), "Wrong status code");
+        assertEquals(initialFilm.getGenres().size(), response.getBody().getGenres().size(), "Genres are lost");
+    }
+
+    @Test
+    public void shouldReturn404WhenUpdatingNotExistingFilm() {
+        Film film = testDataProducer.getFilmWithGenres();
+        film.setId(9999L);
+        HttpEntity<Film> entity = new HttpEntity<>(film, applicationJsonHeaders);
+
+        ResponseEntity<String> response = testRestTemplate.exchange(filmsUrl, HttpMethod.PUT, entity, String.class);
+
+        assertEquals(HttpStatus.valueOf(404), response.getStatusCode(), "Wrong status code");
+        assertTrue(filmStorage.getFilmByIdFull(9999L).isEmpty(), "Film is created by update");
+    }
+
     @Test
     public void shouldUpdateFilmIfMpaIsSentWithoutName() {
         Film initialFilm = testDataProducer.getFilmWithoutGenres();
@@ -582,6 +631,37 @@ public class FilmTest {
         assertEquals(2, savedFilm.getGenres().size(), "Wrong count of genres");
     }
 
+    @Test
+    public void shouldApplyOnlyChangedGenresAndReturnNamesWhenFilmUpdating() {
+        Film initialFilm = testDataProducer.getMutableFilm();
+        initialFilm.setGenres(Set.of(Genre.builder().id(1).build(), Genre.builder().id(2).build()));
+        Long createdFilmId = filmStorage.addFilm(initialFilm).getId();
+        String body = "{" +
+                "\"id\": " + createdFilmId + "," +
+                "\"name\": \"Titanic\"," +
+                "\"description\": \"Drama\"," +
+                "\"releaseDate\": \"1994-01-01\"," +
+                "\"duration\": 120," +
+                "\"mpa\": { \"id\": 1}," +
+                "\"genres\": [{ \"id\": 2}, { \"id\": 3}]" +
+                "}";
+        HttpEntity<String> entity = new HttpEntity<>(body, applicationJsonHeaders);
+
+        Film responseFilm = testRestTemplate.exchange(
+                filmsUrl,
+                HttpMethod.PUT,
+                entity,
+                Film.class).getBody();
+
+        Film savedFilm = filmStorage.getFilmByIdFull(createdFilmId).get();
+        assertEquals(savedFilm.getGenres(), responseFilm.getGenres(), "Response genres differ from saved");
+        assertEquals(Set.of(2, 3), savedFilm.getGenres().stream().map(Genre::getId).collect(Collectors.toSet()),
+                "Wrong genres after update");
+        assertTrue(responseFilm.getGenres().stream().allMatch(genre -> genre.getName() != null),
+                "Genre names are missing in response");
+        assertEquals(savedFilm.getMpa(), responseFilm.getMpa(), "Wrong mpa in response");
+    }
+
 
     @Test
     public void shouldReturn400IfNameIsAbsentWhenFilmUpdating() {
@@ -1078,8 +1158,39 @@ public class FilmTest {
         assertEquals(HttpStatus.valueOf(404), responseEntity.getStatusCode(), "Wrong status code");
     }
 
+    @Test
+    public void shouldNotCountLikeInIndexWhenTransactionIsRolledBack() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long filmId = testDataProducer.addDefaultFilmToDB();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmService.giveLikeFromUserToFilm(filmId, userId);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, likesIndex.getLikesCount(filmId), "Rolled back like is in index");
+
+        filmService.giveLikeFromUserToFilm(filmId, userId);
+
+        assertEquals(1, likesIndex.getLikesCount(filmId), "Committed like is not in index");
+    }
+
     // =============================== DELETE /films/{id}/like/{userId} ======================================
 
+    @Test
+    public void shouldKeepLikeInIndexWhenRemoveIsRolledBack() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long filmId = testDataProducer.addDefaultFilmToDB();
+        filmService.giveLikeFromUserToFilm(filmId, userId);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            filmService.removeUserLikeFromFilm(filmId, userId);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(1, likesIndex.getLikesCount(filmId), "Like is removed from index by rolled back transaction");
+    }
+
     @Test
     public void shouldRemoveUserLikeFromFilm() {
         Long toBeLikedFilmId = testDataProducer.addDefaultFilmToDB();
@@ -1658,6 +1769,78 @@ public class FilmTest {
         assertEquals(HttpStatus.valueOf(400), responseEntity.getStatusCode(), "Wrong status code");
     }
 
+    // =============================== GET films/{id}/similar ======================================
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldReturnFilmWithSameDirectorFirstWhenGetSimilarByContent() {
+        testDataProducer.createContextWithSearchFilms();
+
+        List<Film> similarFilms = testRestTemplate.exchange(
+                createGetSimilarFilms(2L, "content", 2),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Film>>() {
+                }
+        ).getBody();
+
+        assertEquals(2, similarFilms.size(), "Wrong similar films size");
+        assertEquals(3L, similarFilms.get(0).getId(), "Wrong most similar film");
+        assertEquals(1L, similarFilms.get(1).getId(), "Wrong least similar film");
+    }
+
+    @Test
+    public void shouldReturn400IfSimilarModeIsUnknown() {
+        Long filmId = filmService.addFilm(testDataProducer.getMutableFilm()).getId();
+
+        ResponseEntity<String> responseEntity = testRestTemplate.exchange(
+                createGetSimilarFilms(filmId, "unknown", 10),
+                HttpMethod.GET,
+                null,
+                String.class);
+
+        assertEquals(HttpStatus.valueOf(400), responseEntity.getStatusCode(), "Wrong status code");
+    }
+
+    @Test
+    public void shouldReturn404IfFilmForSimilarDoesNotExist() {
+        ResponseEntity<String> responseEntity = testRestTemplate.exchange(
+                createGetSimilarFilms(9999L, "content", 10),
+                HttpMethod.GET,
+                null,
+                String.class);
+
+        assertEquals(HttpStatus.valueOf(404), responseEntity.getStatusCode(), "Wrong status code");
+    }
+
+    // =============================== GET recommendations/group ======================================
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldRecommendNeighbourFilmNotLikedByGroup() {
+        Long firstFilmId = testDataProducer.addDefaultFilmToDB();
+        Long secondFilmId = testDataProducer.addDefaultFilmToDB();
+        Long thirdFilmId = testDataProducer.addDefaultFilmToDB();
+        Long firstUserId = testDataProducer.addDefaultUserToDB();
+        Long secondUserId = testDataProducer.addDefaultUserToDB();
+        Long neighbourId = testDataProducer.addDefaultUserToDB();
+        filmService.giveLikeFromUserToFilm(firstFilmId, firstUserId);
+        filmService.giveLikeFromUserToFilm(thirdFilmId, secondUserId);
+        filmService.giveLikeFromUserToFilm(firstFilmId, neighbourId);
+        filmService.giveLikeFromUserToFilm(secondFilmId, neighbourId);
+
+        List<Film> recommendedFilms = testRestTemplate.exchange(
+                createGetGroupRecommendations(firstUserId + "," + secondUserId),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Film>>() {
+                }
+        ).getBody();
+
+        assertEquals(1, recommendedFilms.size(), "Wrong group recommendations size");
+        assertEquals(secondFilmId, recommendedFilms.get(0).getId(), "Wrong recommended film");
+    }
+
     @Test
     public void shouldFillSeveralUserLikes() {
         Map<Long, Set<Long>> userLikes;
@@ -1691,4 +1874,73 @@ public class FilmTest {
         assertEquals(2, userLikes.get(userId).size());
         assertEquals(1, userLikes.get(userId2).size());
     }
-}
\ No newline at end of file
+
+    // =============================== POST films/bulk ======================================
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.BEFORE_METHOD)
+    public void shouldImportValidFilmsAndReportInvalidOnes() {
+        String body = "[" +
+                "{\"name\": \"Bulkimported\", \"description\": \"description\", " +
+                "\"releaseDate\": \"2000-01-01\", \"duration\": 100, \"mpa\": {\"id\": 1}, " +
+                "\"genres\": [{\"id\": 1}, {\"id\": 2}]}," +
+                "{\"name\": \"Wrong mpa\", \"description\": \"description\", " +
+                "\"releaseDate\": \"2000-01-01\", \"duration\": 100, \"mpa\": {\"id\": 99}}," +
+                "{\"name\": \"Too old\", \"description\": \"description\", " +
+                "\"releaseDate\": \"1800-01-01\", \"duration\": 100, \"mpa\": {\"id\": 1}}" +
+                "]";
+
+        List<BulkImportResult> results = testRestTemplate.exchange(
+                createImportFilmsUrl(),
+                HttpMethod.POST,
+                new HttpEntity<>(body, applicationJsonHeaders),
+                new ParameterizedTypeReference<List<BulkImportResult>>() {
+                }
+        ).getBody();
+        results.sort(Comparator.comparingInt(BulkImportResult::getIndex));
+        List<Film> foundFilms = testRestTemplate.exchange(
+                createGetSearch("bulkimp", "title"),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Film>>() {
+                }
+        ).getBody();
+
+        assertEquals(3, results.size(), "Wrong results count");
+        assertNotNull(results.get(0).getId(), "Valid film not imported");
+        assertNotNull(results.get(1).getError(), "Film with wrong mpa imported");
+        assertNotNull(results.get(2).getError(), "Film with wrong release date imported");
+        Film imported = filmStorage.getFilmByIdFull(results.get(0).getId()).orElseThrow();
+        assertEquals(2, imported.getGenres().size(), "Genres not linked");
+        assertEquals(1, foundFilms.size(), "Imported film not added to search catalogue");
+    }
+
+    @Test
+    public void shouldImportFilmsWithNullCollectionsAndReportBrokenReferences() {
+        String body = "[" +
+                "{\"name\": \"Null collections\", \"description\": \"description\", " +
+                "\"releaseDate\": \"2000-01-01\", \"duration\": 100, \"mpa\": {\"id\": 1}, " +
+                "\"genres\": null, \"directors\": null}," +
+                "{\"name\": \"Null genre\", \"description\": \"description\", " +
+                "\"releaseDate\": \"2000-01-01\", \"duration\": 100, \"mpa\": {\"id\": 1}, " +
+                "\"genres\": [null]}," +
+                "{\"name\": \"After broken\", \"description\": \"description\", " +
+                "\"releaseDate\": \"2000-01-01\", \"duration\": 100, \"mpa\": {\"id\": 1}}" +
+                "]";
+
+        List<BulkImportResult> results = testRestTemplate.exchange(
+                createImportFilmsUrl(),
+                HttpMethod.POST,
+                new HttpEntity<>(body, applicationJsonHeaders),
+                new ParameterizedTypeReference<List<BulkImportResult>>() {
+                }
+        ).getBody();
+        results.sort(Comparator.comparingInt(BulkImportResult::getIndex));
+
+        assertEquals(3, results.size(), "Wrong results count");
+        Film imported = filmStorage.getFilmByIdFull(results.get(0).getId()).orElseThrow();
+        assertTrue(imported.getGenres().isEmpty(), "Genres linked to film with null genres");
+        assertTrue(imported.getDirectors().isEmpty(), "Directors linked to film with null directors");
+        assertNotNull(results.get(1).getError(), "Film with null genre imported");
+        assertNotNull(results.get(2).getId(), "Film after broken one not imported");
+    }
+}
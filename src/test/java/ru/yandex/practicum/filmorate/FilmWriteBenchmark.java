@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.repository.film.DirectorDao;
+import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
+import ru.yandex.practicum.filmorate.repository.film.h2.FilmGenreDao;
+import ru.yandex.practicum.filmorate.repository.film.h2.FilmLikesDao;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Сравнение скорости записи фильмов: процедура UPSERT_FILM против прежней последовательности запросов
+(вставка, MERGE для MPA, пакеты жанров и режиссёров, перечитывание жанров, лайков и режиссёров).
+Запуск: mvn test -Dbenchmark=true
+ */
+@Slf4j
+@SpringBootTest
+@AutoConfigureTestDatabase
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class FilmWriteBenchmark {
+
+    private static final int WARMUP_WRITES = 2_000;
+    private static final int MEASURED_WRITES = 10_000;
+    private static final int MEASURED_RUNS = 3;
+
+    @Autowired
+    @Qualifier("H2FilmRepository")
+    private FilmStorage filmStorage;
+    @Autowired
+    private FilmGenreDao filmGenreDao;
+    @Autowired
+    private FilmLikesDao filmLikesDao;
+    @Autowired
+    private DirectorDao directorDao;
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Director director;
+
+    @BeforeEach
+    public void createDirector() {
+        director = directorDao.add(Director.builder().name("Benchmark director").build());
+    }
+
+    @Test
+    public void compareProcedureWithMultiStatementPath() {
+        run(WARMUP_WRITES, this::writeWithMultipleStatements);
+        run(WARMUP_WRITES, this::writeWithProcedure);
+
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            double multiStatementRate = run(MEASURED_WRITES, this::writeWithMultipleStatements);
+            double procedureRate = run(MEASURED_WRITES, this::writeWithProcedure);
+
+            log.info("Film writes run {}: multi-statement {}/s, procedure {}/s (x{})", i + 1,
+                    String.format("%.0f", multiStatementRate), String.format("%.0f", procedureRate),
+                    String.format("%.2f", procedureRate / multiStatementRate));
+            assertTrue(procedureRate > 0 && multiStatementRate > 0, "Benchmark did not run");
+        }
+    }
+
+    private double run(int writes, Runnable write) {
+        long start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            transactionTemplate.executeWithoutResult(status -> write.run());
+        }
+        return writes / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private void writeWithProcedure() {
+        filmStorage.addFilm(createFilm());
+    }
+
+    //Прежний FilmRepository.addFilm: каждая часть фильма отдельным запросом, затем перечитывание связей
+    private void writeWithMultipleStatements() {
+        Film film = createFilm();
+        Long filmId = new SimpleJdbcInsert(jdbcTemplate.getJdbcTemplate())
+                .withTableName("film")
+                .usingGeneratedKeyColumns("film_id")
+                .executeAndReturnKey(Map.of(
+                        "film_name", film.getName(),
+                        "description", film.getDescription(),
+                        "release_date", film.getReleaseDate(),
+                        "duration", film.getDuration()))
+                .longValue();
+        jdbcTemplate.update("MERGE INTO film (film_id, mpa_rating_id) KEY (film_id) VALUES (:filmId, :ratingMpaId)",
+                new MapSqlParameterSource()
+                        .addValue("filmId", filmId)
+                        .addValue("ratingMpaId", film.getMpa().getId()));
+        filmGenreDao.setGenresToFilm(filmId, Set.of(1, 2));
+        directorDao.addDirectorsToFilm(filmId, Set.of(director.getId()));
+
+        List<Long> filmIds = List.of(filmId);
+        film.setGenres(filmGenreDao.getGenresToFilms(filmIds).get(filmId));
+        filmLikesDao.getFilmsLikes(filmIds);
+        film.setDirectors(directorDao.getDirectorsForFilms(filmIds).get(filmId));
+    }
+
+    private Film createFilm() {
+        return Film.builder()
+                .name("Benchmark film")
+                .description("Description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(120)
+                .mpa(new RatingMPA(1, "G"))
+                .genres(Set.of(Genre.builder().id(1).build(), Genre.builder().id(2).build()))
+                .directors(Set.of(director))
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.insert.EntityInserter;
+import ru.yandex.practicum.filmorate.repository.insert.InsertStatements;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+Задержка и аллокации одной вставки пользователя: SimpleJdbcInsert на каждый вызов против EntityInserter.
+Запуск: mvn test-compile, затем main этого класса с тестовым classpath; аллокации выводит профилировщик gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private EntityInserter entityInserter;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .addScript("schema.sql")
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        entityInserter = new EntityInserter(jdbcTemplate);
+        user = User.builder()
+                .login("benchmark")
+                .name("Benchmark")
+                .email("benchmark@mail.ru")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Number simpleJdbcInsertPerCall() {
+        return new SimpleJdbcInsert(jdbcTemplate)
+                .withTableName("users")
+                .usingGeneratedKeyColumns("user_id")
+                .executeAndReturnKey(Map.of(
+                        "user_name", user.getName(),
+                        "login", user.getLogin(),
+                        "email", user.getEmail(),
+                        "birthday", user.getBirthday()));
+    }
+
+    @Benchmark
+    public Long entityInserter() {
+        return entityInserter.insert(InsertStatements.USER, user);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InsertBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
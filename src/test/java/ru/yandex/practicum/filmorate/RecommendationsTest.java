@@ -0,0 +1,409 @@
+package ru.yandex.practicum.filmorate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.RatingMPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.repository.film.FilmStorage;
+import ru.yandex.practicum.filmorate.repository.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.film.FilmService;
+import ru.yandex.practicum.filmorate.service.metrics.StageMetrics;
+import ru.yandex.practicum.filmorate.service.recommendations.PopularFilmsCache;
+import ru.yandex.practicum.filmorate.service.recommendations.RecommendationsService;
+import ru.yandex.practicum.filmorate.service.recommendations.model.AlsModel;
+import ru.yandex.practicum.filmorate.service.recommendations.model.AlsModelStore;
+import ru.yandex.practicum.filmorate.service.recommendations.model.AlsTrainer;
+import ru.yandex.practicum.filmorate.service.recommendations.pipeline.CandidateGenerator;
+import ru.yandex.practicum.filmorate.service.recommendations.pipeline.RecommendationPipeline;
+import ru.yandex.practicum.filmorate.util.TestDataProducer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureTestDatabase
+public class RecommendationsTest {
+    private static final String HOST = "http://localhost:";
+    @TempDir
+    static Path modelDir;
+    @Value(value = "${local.server.port}")
+    private int port;
+    @Autowired
+    private TestRestTemplate testRestTemplate;
+    @Autowired
+    private TestDataProducer testDataProducer;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private AlsTrainer alsTrainer;
+    @Autowired
+    private AlsModelStore alsModelStore;
+    @Autowired
+    private RecommendationsService recommendationsService;
+    @Autowired
+    private PopularFilmsCache popularFilmsCache;
+    @Autowired
+    @Qualifier("H2FilmRepository")
+    private FilmStorage filmStorage;
+    @Autowired
+    @Qualifier("H2UserRepository")
+    private UserStorage userStorage;
+
+    @DynamicPropertySource
+    static void modelProperties(DynamicPropertyRegistry registry) {
+        registry.add("recommendations.model.path", () -> modelDir.resolve("model.bin").toString());
+    }
+
+    private URI createGetRecommendations(Long userId) {
+        return URI.create(
+                String.format("%s%s/users/%d/recommendations", HOST, port, userId)
+        );
+    }
+
+    private URI createGetRecommendationsWithCount(Long userId, int count) {
+        return URI.create(
+                String.format("%s%s/users/%d/recommendations?count=%d", HOST, port, userId, count)
+        );
+    }
+
+    // =============================== ALS model ======================================
+
+    @Test
+    public void shouldReadWrittenModelBack() throws IOException {
+        Path path = modelDir.resolve("round-trip.bin");
+        AlsModel.write(path, 2, new long[]{3, 7}, new long[]{10, 20, 30},
+                new float[]{1, 0, 0, 1},
+                new float[]{0.5f, 0, 0, 2, 1, 1});
+
+        AlsModel model = AlsModel.load(path);
+
+        assertEquals(2, model.getFactors(), "Wrong factors count");
+        assertEquals(2, model.getUserCount(), "Wrong users count");
+        assertEquals(3, model.getItemCount(), "Wrong films count");
+        assertTrue(model.containsUser(7), "User is not found in model");
+        assertFalse(model.containsUser(5), "Unknown user is found in model");
+        assertEquals(List.of(30L, 10L, 20L), model.recommend(3, Set.of(), 3), "Wrong recommendations of first user");
+        assertEquals(List.of(20L, 30L, 10L), model.recommend(7, Set.of(), 3), "Wrong recommendations of second user");
+    }
+
+    @Test
+    public void shouldRejectTruncatedModelFile() throws IOException {
+        Path path = modelDir.resolve("truncated.bin");
+        AlsModel.write(path, 2, new long[]{1}, new long[]{1, 2},
+                new float[]{1, 1},
+                new float[]{1, 1, 1, 1});
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - Float.BYTES);
+        }
+
+        assertThrows(IOException.class, () -> AlsModel.load(path), "Truncated model is loaded");
+    }
+
+    @Test
+    public void shouldRecommendTopScoredFilmsExceptExcluded() throws IOException {
+        Path path = modelDir.resolve("scoring.bin");
+        AlsModel.write(path, 2, new long[]{1}, new long[]{10, 20, 30, 40, 50},
+                new float[]{1, 2},
+                new float[]{1, 0, 0, 1, 3, 3, 2, 0, 0, -1});
+        AlsModel model = AlsModel.load(path);
+
+        assertEquals(List.of(30L, 20L), model.recommend(1, Set.of(), 2), "Wrong top scored films");
+        assertEquals(List.of(20L, 40L, 10L), model.recommend(1, Set.of(30L, 99L), 3),
+                "Excluded film is recommended");
+        assertEquals(List.of(30L, 20L, 40L, 10L, 50L), model.recommend(1, Set.of(), 10),
+                "Wrong recommendations when count exceeds films count");
+        assertTrue(model.recommend(2, Set.of(), 3).isEmpty(), "Films are recommended to unknown user");
+    }
+
+    @Test
+    public void shouldTrainModelSeparatingLikeClusters() throws IOException {
+        List<Long> firstClusterFilms = addFilms(3);
+        List<Long> secondClusterFilms = addFilms(3);
+        List<Long> firstClusterUsers = addUsersLikingFilms(4, firstClusterFilms);
+        addUsersLikingFilms(4, secondClusterFilms);
+        Long userId = firstClusterUsers.get(0);
+        Long notLikedFilmId = firstClusterFilms.get(2);
+        filmService.removeUserLikeFromFilm(notLikedFilmId, userId);
+
+        alsTrainer.train();
+
+        AlsModel model = alsModelStore.getModel().orElseThrow();
+        assertTrue(model.containsUser(userId), "User is not found in trained model");
+        Set<Long> likedFilms = Set.of(firstClusterFilms.get(0), firstClusterFilms.get(1));
+        assertEquals(notLikedFilmId, model.recommend(userId, likedFilms, 1).get(0),
+                "Film of user's cluster is not recommended first");
+        for (Long otherUserId : firstClusterUsers.subList(1, firstClusterUsers.size())) {
+            assertEquals(new HashSet<>(firstClusterFilms), new HashSet<>(model.recommend(otherUserId, Set.of(), 3)),
+                    "Liked films are not scored above films of other cluster");
+        }
+    }
+
+    // =============================== cold start ======================================
+
+    @Test
+    public void shouldServePopularFilmsOfAgeCohortToUserWithoutLikes() {
+        Long restrictedFilmId = addFilmWithMpa(new RatingMPA(4, "R"));
+        Long generalFilmId = addFilmWithMpa(new RatingMPA(1, "G"));
+        addUsersLikingFilms(3, List.of(restrictedFilmId, generalFilmId));
+        popularFilmsCache.refresh();
+        Long childId = addUserBornYearsAgo(8);
+        Long adultId = addUserBornYearsAgo(30);
+
+        Set<Long> childRecommendations = getRecommendedFilmIds(childId);
+        Set<Long> adultRecommendations = getRecommendedFilmIds(adultId);
+
+        assertTrue(childRecommendations.contains(generalFilmId), "Popular film is not recommended to child");
+        assertFalse(childRecommendations.contains(restrictedFilmId), "Film rated R is recommended to child");
+        assertTrue(adultRecommendations.containsAll(Set.of(generalFilmId, restrictedFilmId)),
+                "Popular films are not recommended to adult");
+    }
+
+    @Test
+    public void shouldKeepNeighbourRecommendationsForUserWithFewLikes() {
+        List<Long> filmIds = addFilms(2);
+        addUsersLikingFilms(1, filmIds);
+        Long popularFilmId = addFilms(1).get(0);
+        addUsersLikingFilms(5, List.of(popularFilmId));
+        popularFilmsCache.refresh();
+        Long userId = testDataProducer.addDefaultUserToDB();
+        filmService.giveLikeFromUserToFilm(filmIds.get(0), userId);
+
+        List<Film> recommendations = recommendationsService.getRecommendations(userId, 100);
+
+        assertEquals(filmIds.get(1), recommendations.get(0).getId(), "Neighbour film is not recommended first");
+        assertFalse(getIds(recommendations).contains(popularFilmId), "Popular film replaced neighbour recommendations");
+    }
+
+    @Test
+    public void shouldServePopularFilmsToUserWithFewLikesWithoutNeighbours() {
+        Long popularFilmId = addFilms(1).get(0);
+        addUsersLikingFilms(5, List.of(popularFilmId));
+        popularFilmsCache.refresh();
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long unpopularFilmId = addFilms(1).get(0);
+        filmService.giveLikeFromUserToFilm(unpopularFilmId, userId);
+
+        Set<Long> recommendations = getRecommendedFilmIds(userId);
+
+        assertTrue(recommendations.contains(popularFilmId), "Popular film is not recommended");
+        assertFalse(recommendations.contains(unpopularFilmId), "Liked film is recommended");
+    }
+
+    // =============================== GET users/{id}/recommendations ======================================
+
+    @Test
+    public void shouldReturnAllNeighbourFilmsWithoutCount() {
+        Long sharedFilmId = addFilmWithGenres();
+        List<Long> neighbourFilmIds = addFilms(12);
+        Long neighbourId = testDataProducer.addDefaultUserToDB();
+        filmService.giveLikeFromUserToFilm(sharedFilmId, neighbourId);
+        neighbourFilmIds.forEach(filmId -> filmService.giveLikeFromUserToFilm(filmId, neighbourId));
+        Long popularInGenreFilmId = addFilmWithGenres();
+        addUsersLikingFilms(3, List.of(popularInGenreFilmId));
+        Long userId = testDataProducer.addDefaultUserToDB();
+        filmService.giveLikeFromUserToFilm(sharedFilmId, userId);
+
+        List<Film> recommendedFilms = getRecommendations(createGetRecommendations(userId));
+
+        assertEquals(new HashSet<>(neighbourFilmIds), getIds(recommendedFilms),
+                "Recommendations without count differ from films of neighbours");
+        assertEquals(neighbourFilmIds.size(), recommendedFilms.size(), "Recommended films are duplicated");
+    }
+
+    @Test
+    public void shouldReturnPipelinePageWithCount() {
+        Long sharedFilmId = addFilmWithGenres();
+        List<Long> neighbourFilmIds = addFilms(12);
+        Long neighbourId = testDataProducer.addDefaultUserToDB();
+        filmService.giveLikeFromUserToFilm(sharedFilmId, neighbourId);
+        neighbourFilmIds.forEach(filmId -> filmService.giveLikeFromUserToFilm(filmId, neighbourId));
+        Long popularInGenreFilmId = addFilmWithGenres();
+        addUsersLikingFilms(3, List.of(popularInGenreFilmId));
+        Long userId = testDataProducer.addDefaultUserToDB();
+        filmService.giveLikeFromUserToFilm(sharedFilmId, userId);
+
+        List<Film> page = getRecommendations(createGetRecommendationsWithCount(userId, 5));
+        Set<Long> allCandidates = getIds(getRecommendations(createGetRecommendationsWithCount(userId, 100)));
+
+        assertEquals(5, page.size(), "Wrong recommendations page size");
+        assertTrue(neighbourFilmIds.containsAll(getIds(page)), "Neighbour films are not ranked first");
+        assertTrue(allCandidates.containsAll(neighbourFilmIds), "Neighbour films are missing");
+        assertTrue(allCandidates.contains(popularInGenreFilmId), "Popular film of liked genre is not mixed in");
+        assertFalse(allCandidates.contains(sharedFilmId), "Liked film is recommended");
+    }
+
+    // =============================== recommendation pipeline ======================================
+
+    @Test
+    public void shouldWaitForPrimaryGeneratorAndDropLateOnes() {
+        StageMetrics stageMetrics = new StageMetrics();
+        RecommendationPipeline pipeline = new RecommendationPipeline(List.of(
+                new FixedGenerator("slowPrimary", true, 200, Map.of(1L, 1.0)),
+                new FixedGenerator("slowSecondary", false, 1000, Map.of(2L, 1.0)),
+                new FixedGenerator("fastSecondary", false, 0, Map.of(3L, 1.0))),
+                stageMetrics, 20, 4, 4);
+        try {
+            List<Long> recommendedFilmIds = pipeline.recommend(1, Set.of(), 10);
+
+            assertEquals(Set.of(1L, 3L), new HashSet<>(recommendedFilmIds), "Wrong generators results merged");
+            assertEquals(1, stageMetrics.getStats(StageMetrics.RECOMMENDATIONS).get("slowSecondary").getDropped(),
+                    "Late generator is not dropped");
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldRunPrimaryGeneratorInCallerThreadWhenQueueIsFull() {
+        StageMetrics stageMetrics = new StageMetrics();
+        RecommendationPipeline pipeline = new RecommendationPipeline(List.of(
+                new FixedGenerator("busy", false, 200, Map.of(1L, 1.0)),
+                new FixedGenerator("queued", false, 0, Map.of(2L, 1.0)),
+                new FixedGenerator("rejected", false, 0, Map.of(3L, 1.0)),
+                new FixedGenerator("primary", true, 0, Map.of(4L, 1.0))),
+                stageMetrics, 20, 1, 1);
+        try {
+            List<Long> recommendedFilmIds = pipeline.recommend(1, Set.of(), 10);
+
+            assertTrue(recommendedFilmIds.contains(4L), "Primary generator is dropped when queue is full");
+            assertFalse(recommendedFilmIds.contains(3L), "Generator is run over queue capacity");
+            assertEquals(1, stageMetrics.getStats(StageMetrics.RECOMMENDATIONS).get("rejected").getDropped(),
+                    "Rejected generator is not dropped");
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldExcludeLikedFilmsAndRankByWeightedScore() {
+        RecommendationPipeline pipeline = new RecommendationPipeline(List.of(
+                new FixedGenerator("primary", true, 0, Map.of(1L, 4.0, 2L, 2.0, 3L, 1.0)),
+                new FixedGenerator("secondary", false, 0, Map.of(3L, 10.0, 4L, 5.0))),
+                new StageMetrics(), 100, 2, 2);
+        try {
+            //primary: 1 -> 1.0, 2 -> 0.5, 3 -> 0.25; secondary с весом 0.5: 3 -> 0.5, 4 -> 0.25
+            assertEquals(List.of(3L, 2L, 4L), pipeline.recommend(1, Set.of(1L), 3), "Wrong ranking");
+        } finally {
+            pipeline.shutdown();
+        }
+    }
+
+    private List<Film> getRecommendations(URI uri) {
+        return testRestTemplate.exchange(
+                uri,
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Film>>() {
+                }
+        ).getBody();
+    }
+
+    private Long addFilmWithGenres() {
+        Film film = testDataProducer.getMutableFilm();
+        film.setGenres(testDataProducer.getCorrectGenres());
+        return filmStorage.addFilm(film).getId();
+    }
+
+    private Long addFilmWithMpa(RatingMPA mpa) {
+        Film film = testDataProducer.getMutableFilm();
+        film.setMpa(mpa);
+        return filmStorage.addFilm(film).getId();
+    }
+
+    private Long addUserBornYearsAgo(int years) {
+        User user = testDataProducer.getDefaultMutableUser();
+        user.setBirthday(LocalDate.now().minusYears(years));
+        return userStorage.addUser(user).getId();
+    }
+
+    private Set<Long> getRecommendedFilmIds(Long userId) {
+        return getIds(recommendationsService.getRecommendations(userId, 1000));
+    }
+
+    private Set<Long> getIds(List<Film> films) {
+        return films.stream()
+                .map(Film::getId)
+                .collect(Collectors.toSet());
+    }
+
+    private List<Long> addFilms(int count) {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            filmIds.add(testDataProducer.addDefaultFilmToDB());
+        }
+        return filmIds;
+    }
+
+    private List<Long> addUsersLikingFilms(int count, List<Long> filmIds) {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Long userId = testDataProducer.addDefaultUserToDB();
+            filmIds.forEach(filmId -> filmService.giveLikeFromUserToFilm(filmId, userId));
+            userIds.add(userId);
+        }
+        return userIds;
+    }
+
+    private static class FixedGenerator implements CandidateGenerator {
+        private final String name;
+        private final boolean primary;
+        private final long delayMs;
+        private final Map<Long, Double> candidates;
+
+        FixedGenerator(String name, boolean primary, long delayMs, Map<Long, Double> candidates) {
+            this.name = name;
+            this.primary = primary;
+            this.delayMs = delayMs;
+            this.candidates = candidates;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public double getWeight() {
+            return primary ? 1.0 : 0.5;
+        }
+
+        @Override
+        public Map<Long, Double> generate(long userId, Set<Long> likedFilmIds) {
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return candidates;
+        }
+
+        @Override
+        public boolean isPrimary() {
+            return primary;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.service.user.UserBulkImporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+Пропускная способность POST /users/bulk без HTTP: поток JSON-массива проходит через UserBulkImporter,
+ответ отбрасывается. Цель - не меньше 50 000 пользователей в секунду. Запуск: mvn test -Dbenchmark=true
+ */
+@Slf4j
+@SpringBootTest
+@AutoConfigureTestDatabase
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class UserBulkImportBenchmark {
+
+    private static final int WARMUP_USERS = 100_000;
+    private static final int MEASURED_USERS = 500_000;
+    private static final int MEASURED_RUNS = 3;
+
+    @Autowired
+    private UserBulkImporter userBulkImporter;
+
+    @Test
+    public void measureImportThroughput() throws IOException {
+        importUsers(WARMUP_USERS);
+
+        double bestRate = 0;
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            double rate = importUsers(MEASURED_USERS);
+            log.info("Bulk import run {}: {} users/s", run + 1, String.format("%.0f", rate));
+            bestRate = Math.max(bestRate, rate);
+        }
+
+        log.info("Bulk import best of {} runs: {} users/s", MEASURED_RUNS, String.format("%.0f", bestRate));
+        assertTrue(bestRate > 0, "Benchmark did not run");
+    }
+
+    private double importUsers(int count) throws IOException {
+        byte[] body = createBody(count);
+        long start = System.nanoTime();
+        userBulkImporter.importItems(new ByteArrayInputStream(body), OutputStream.nullOutputStream());
+        return count / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private byte[] createBody(int count) {
+        StringBuilder body = new StringBuilder(count * 100).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"login\":\"user").append(i)
+                    .append("\",\"name\":\"User ").append(i)
+                    .append("\",\"email\":\"user").append(i)
+                    .append("@domen.ru\",\"birthday\":\"1990-01-01\"}");
+        }
+        return body.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
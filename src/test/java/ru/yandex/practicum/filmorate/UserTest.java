@@ -9,15 +9,47 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.BulkImportResult;
+import ru.yandex.practicum.filmorate.model.FriendConfirmationStatus;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.feed.EventType;
+import ru.yandex.practicum.filmorate.model.feed.Feed;
+import ru.yandex.practicum.filmorate.model.feed.OperationType;
+import ru.yandex.practicum.filmorate.repository.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.repository.user.FriendGraph;
 import ru.yandex.practicum.filmorate.repository.user.UserStorage;
+import ru.yandex.practicum.filmorate.service.feed.FeedCache;
+import ru.yandex.practicum.filmorate.service.feed.FeedOutboxFlusher;
+import ru.yandex.practicum.filmorate.service.feed.FeedStreamHub;
+import ru.yandex.practicum.filmorate.service.feed.TimelineFanout;
+import ru.yandex.practicum.filmorate.service.metrics.StageMetrics;
 import ru.yandex.practicum.filmorate.util.TestDataProducer;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -35,6 +67,22 @@ public class UserTest {
     private UserStorage userStorage;
     @Autowired
     private TestDataProducer testDataProducer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private FeedStreamHub feedStreamHub;
+    @Autowired
+    private FeedCache feedCache;
+    @Autowired
+    private FriendGraph friendGraph;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private FeedStorage feedStorage;
+    @Autowired
+    private FeedOutboxFlusher feedOutboxFlusher;
+    @Autowired
+    private TimelineFanout timelineFanout;
     @Value(value = "${local.server.port}")
     private int port;
     private URI usersUrl;
@@ -62,6 +110,57 @@ public class UserTest {
         return URI.create(String.format("%s%s/users/%d/friends/common/%d", HOST, port, userId, comparedUserId));
     }
 
+    private URI createImportUsersUrl() {
+        return URI.create(String.format("%s%s/users/bulk", HOST, port));
+    }
+
+    private URI createGetMutualFriendsCountsUrl(Long userId) {
+        return URI.create(String.format("%s%s/users/%d/friends/mutual-counts", HOST, port, userId));
+    }
+
+    private URI createGetCommonFriendsOfUsersUrl(String userIds) {
+        return URI.create(String.format("%s%s/users/common-friends?ids=%s", HOST, port, userIds));
+    }
+
+    private URI createGetFriendRequestsUrl(Long userId, Long afterId, int limit) {
+        return URI.create(String.format("%s%s/users/%d/friends/requests?afterId=%d&limit=%d",
+                HOST, port, userId, afterId, limit));
+    }
+
+    private URI createFriendRequestsActionUrl(Long userId, String action) {
+        return URI.create(String.format("%s%s/users/%d/friends/requests/%s", HOST, port, userId, action));
+    }
+
+    //Число выполнений запросов страницы заявок по статистике H2
+    private long countFriendRequestsPageQueries() {
+        return jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(execution_count), 0) FROM information_schema.query_statistics " +
+                        "WHERE LOWER(sql_statement) LIKE CONCAT('%from user', '_friend as uf%')",
+                Long.class
+        );
+    }
+
+    private URI createGetFriendshipPathUrl(Long userId, Long otherUserId) {
+        return URI.create(String.format("%s%s/users/%d/path/%d", HOST, port, userId, otherUserId));
+    }
+
+    private URI createGetFriendSuggestionsUrl(Long userId, int count) {
+        return URI.create(String.format("%s%s/users/%d/friends/suggestions?count=%d", HOST, port, userId, count));
+    }
+
+    private URI createGetUserFeedUrl(Long userId, Long before, int limit) {
+        String cursor = before == null ? "" : String.format("&before=%d", before);
+        return URI.create(String.format("%s%s/users/%d/feed?limit=%d%s", HOST, port, userId, limit, cursor));
+    }
+
+    private URI createGetUserFeedStreamUrl(Long userId) {
+        return URI.create(String.format("%s%s/users/%d/feed/stream", HOST, port, userId));
+    }
+
+    private URI createGetUserTimelineUrl(Long userId) {
+        return URI.create(String.format("%s%s/users/%d/timeline", HOST, port, userId));
+    }
+
     // =============================== POST /users ======================================
 
     @Test
@@ -903,6 +1002,67 @@ public class UserTest {
         assertEquals(HttpStatus.valueOf(404), responseEntity.getStatusCode(), "Wrong status");
     }
 
+    @Test
+    public void shouldNotAddFriendToGraphWhenTransactionIsRolledBack() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long friendId = testDataProducer.addDefaultUserToDB();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            userStorage.addFriendToUser(userId, friendId);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, friendGraph.getFriends(userId).length, "Rolled back friendship is in graph");
+        assertEquals(0, friendGraph.getPending(friendId).length, "Rolled back request is in graph");
+
+        userStorage.addFriendToUser(userId, friendId);
+
+        assertArrayEquals(new int[]{friendId.intValue()}, friendGraph.getFriends(userId),
+                "Committed friendship is not in graph");
+    }
+
+    @Test
+    public void shouldKeepFriendInGraphWhenRemoveIsRolledBack() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long friendId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(userId, friendId);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            userStorage.removeFriendFromUser(userId, friendId);
+            status.setRollbackOnly();
+        });
+
+        assertArrayEquals(new int[]{friendId.intValue()}, friendGraph.getFriends(userId),
+                "Friendship is removed from graph by rolled back transaction");
+    }
+
+    @Test
+    public void shouldMigrateTextFriendStatusesOfOldDatabase() throws SQLException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:old-friend-statuses");
+        try (Connection connection = dataSource.getConnection()) {
+            JdbcTemplate oldDatabase = new JdbcTemplate(new SingleConnectionDataSource(connection, true));
+            oldDatabase.execute("CREATE TABLE USERS (USER_ID INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                    "USER_NAME VARCHAR NOT NULL, LOGIN VARCHAR NOT NULL, EMAIL VARCHAR NOT NULL, BIRTHDAY DATE NOT NULL)");
+            oldDatabase.execute("CREATE TABLE USER_FRIEND (USER_ID INTEGER, FRIEND_ID INTEGER, " +
+                    "CONFIRMATION_STATUS VARCHAR NOT NULL, PRIMARY KEY (USER_ID, FRIEND_ID))");
+            oldDatabase.execute("INSERT INTO USERS (USER_NAME, LOGIN, EMAIL, BIRTHDAY) " +
+                    "VALUES ('name', 'first', 'first@mail.ru', '2000-01-01'), ('name', 'second', 'second@mail.ru', '2000-01-01')");
+            oldDatabase.execute("INSERT INTO USER_FRIEND VALUES (1, 2, 'CONFIRMED'), (2, 1, 'WAITING_FOR_APPROVAL')");
+
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema.sql"));
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("schema.sql"));
+
+            assertEquals("TINYINT NO", oldDatabase.queryForObject("SELECT DATA_TYPE || ' ' || IS_NULLABLE " +
+                    "FROM INFORMATION_SCHEMA.COLUMNS " +
+                    "WHERE TABLE_NAME = 'USER_FRIEND' AND COLUMN_NAME = 'CONFIRMATION_STATUS'", String.class),
+                    "Status column is not migrated");
+            FriendGraph migratedGraph = new FriendGraph(
+                    new NamedParameterJdbcTemplate(oldDatabase), 1000, 200, 6, 100);
+            assertArrayEquals(new int[]{2}, migratedGraph.getFriends(1), "Confirmed status is not migrated");
+            assertArrayEquals(new int[]{1}, migratedGraph.getPending(2), "Pending status is not migrated");
+        }
+    }
+
     // =============================== DELETE /users/{id}/friends/{friendId} ======================================
 
     @Test
@@ -1191,4 +1351,463 @@ public class UserTest {
         assertTrue(requestedUsers.isEmpty(), "Common friend found but shouldn not");
     }
 
-}
\ No newline at end of file
+    // =============================== GET /users/{id}/friends/suggestions ====================================
+    @Test
+    public void shouldReturnFriendSuggestionsOrderedByMutualFriends() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long firstFriendId = testDataProducer.addDefaultUserToDB();
+        Long secondFriendId = testDataProducer.addDefaultUserToDB();
+        Long twoMutualId = testDataProducer.addDefaultUserToDB();
+        Long oneMutualId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(userId, firstFriendId);
+        userStorage.addFriendToUser(userId, secondFriendId);
+        userStorage.addFriendToUser(firstFriendId, twoMutualId);
+        userStorage.addFriendToUser(secondFriendId, twoMutualId);
+        userStorage.addFriendToUser(firstFriendId, oneMutualId);
+
+        List<User> requestedUsers = testRestTemplate.exchange(
+                createGetFriendSuggestionsUrl(userId, 10),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<User>>() {
+                }
+        ).getBody();
+
+        assertEquals(2, requestedUsers.size(), "Wrong suggestions count");
+        assertEquals(twoMutualId, requestedUsers.get(0).getId(), "Wrong best suggestion");
+        assertEquals(oneMutualId, requestedUsers.get(1).getId(), "Wrong second suggestion");
+    }
+
+    @Test
+    public void shouldSuggestFriendsAmongMoreThan65kCandidates() {
+        int userId = 10_000_000;
+        int friendsCount = 1000;
+        int candidatesPerFriend = 199;
+        int mostMutualCandidate = 20_000_000;
+        int secondMutualCandidate = 20_000_001;
+        for (int friend = 1; friend <= friendsCount; friend++) {
+            int friendId = userId + friend;
+            friendGraph.setEdge(userId, friendId, FriendConfirmationStatus.CONFIRMED);
+            for (int candidate = 0; candidate < candidatesPerFriend; candidate++) {
+                friendGraph.setEdge(friendId, 30_000_000 + friend * candidatesPerFriend + candidate,
+                        FriendConfirmationStatus.CONFIRMED);
+            }
+        }
+        for (int friend = 1; friend <= 3; friend++) {
+            friendGraph.setEdge(userId + friend, mostMutualCandidate, FriendConfirmationStatus.CONFIRMED);
+        }
+        for (int friend = 4; friend <= 5; friend++) {
+            friendGraph.setEdge(userId + friend, secondMutualCandidate, FriendConfirmationStatus.CONFIRMED);
+        }
+
+        try {
+            int[] suggestions = assertTimeout(Duration.ofSeconds(2), () -> friendGraph.suggestFriends(userId, 3),
+                    "Suggestions among many candidates are too slow");
+
+            assertEquals(mostMutualCandidate, suggestions[0], "Wrong first suggestion");
+            assertEquals(secondMutualCandidate, suggestions[1], "Wrong second suggestion");
+            assertEquals(3, suggestions.length, "Wrong suggestions count");
+        } finally {
+            for (int friend = 0; friend <= friendsCount; friend++) {
+                friendGraph.removeUser(userId + friend);
+            }
+        }
+    }
+
+    // =============================== GET /users/{id}/path/{otherId} ====================================
+    @Test
+    public void shouldReturnShortestFriendshipPath() {
+        Long firstUserId = testDataProducer.addDefaultUserToDB();
+        Long secondUserId = testDataProducer.addDefaultUserToDB();
+        Long thirdUserId = testDataProducer.addDefaultUserToDB();
+        Long fourthUserId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(firstUserId, secondUserId);
+        userStorage.addFriendToUser(secondUserId, thirdUserId);
+        userStorage.addFriendToUser(thirdUserId, fourthUserId);
+        userStorage.addFriendToUser(firstUserId, thirdUserId);
+
+        List<User> path = testRestTemplate.exchange(
+                createGetFriendshipPathUrl(firstUserId, fourthUserId),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<User>>() {
+                }
+        ).getBody();
+
+        assertEquals(3, path.size(), "Wrong path length");
+        assertEquals(firstUserId, path.get(0).getId(), "Wrong path start");
+        assertEquals(thirdUserId, path.get(1).getId(), "Wrong intermediate user");
+        assertEquals(fourthUserId, path.get(2).getId(), "Wrong path end");
+    }
+
+    @Test
+    public void shouldReturn404IfNoFriendshipPath() {
+        Long firstUserId = testDataProducer.addDefaultUserToDB();
+        Long secondUserId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(secondUserId, firstUserId);
+
+        ResponseEntity<String> responseEntity = testRestTemplate.exchange(
+                createGetFriendshipPathUrl(firstUserId, secondUserId),
+                HttpMethod.GET,
+                null,
+                String.class
+        );
+
+        assertEquals(HttpStatus.valueOf(404),
+                responseEntity.getStatusCode(),
+                "Wrong status code"
+        );
+    }
+
+    // =============================== GET /users/{id}/friends/requests ====================================
+    @Test
+    public void shouldReturnFriendRequestsPageAfterGivenId() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long firstRequesterId = testDataProducer.addDefaultUserToDB();
+        Long secondRequesterId = testDataProducer.addDefaultUserToDB();
+        Long thirdRequesterId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(firstRequesterId, userId);
+        userStorage.addFriendToUser(secondRequesterId, userId);
+        userStorage.addFriendToUser(thirdRequesterId, userId);
+        userStorage.addFriendToUser(userId, secondRequesterId);
+
+        List<User> firstPage = testRestTemplate.exchange(
+                createGetFriendRequestsUrl(userId, 0L, 1),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<User>>() {
+                }
+        ).getBody();
+        List<User> secondPage = testRestTemplate.exchange(
+                createGetFriendRequestsUrl(userId, firstPage.get(0).getId(), 10),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<User>>() {
+                }
+        ).getBody();
+
+        assertEquals(1, firstPage.size(), "Wrong first page size");
+        assertEquals(firstRequesterId, firstPage.get(0).getId(), "Wrong first request");
+        assertEquals(1, secondPage.size(), "Confirmed friend returned as request");
+        assertEquals(thirdRequesterId, secondPage.get(0).getId(), "Wrong second page");
+    }
+
+    @Test
+    public void shouldLoadFriendRequestsPageWithOneIndexedQuery() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long requesterId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(requesterId, userId);
+        jdbcTemplate.execute("SET QUERY_STATISTICS TRUE");
+        long queriesBefore = countFriendRequestsPageQueries();
+
+        testRestTemplate.exchange(
+                createGetFriendRequestsUrl(userId, 0L, 10),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<User>>() {
+                }
+        );
+        //Считаем до EXPLAIN: его текст тоже попадает в статистику запросов
+        long pageQueries = countFriendRequestsPageQueries() - queriesBefore;
+        String plan = jdbcTemplate.queryForObject(
+                "EXPLAIN SELECT u.user_id FROM user_friend AS uf JOIN users AS u ON uf.friend_id = u.user_id " +
+                        "WHERE uf.user_id = ? AND uf.confirmation_status = 0 AND uf.friend_id > 0 " +
+                        "ORDER BY uf.friend_id LIMIT 10",
+                String.class,
+                userId
+        );
+
+        assertEquals(1, pageQueries, "Wrong queries count per page");
+        assertTrue(plan.toLowerCase().contains("idx__user_friend__user_id__status"), "Index is not used: " + plan);
+    }
+
+    @Test
+    public void shouldAcceptAndDeclineFriendRequestsInBulk() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long acceptedRequesterId = testDataProducer.addDefaultUserToDB();
+        Long declinedRequesterId = testDataProducer.addDefaultUserToDB();
+        Long strangerId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(acceptedRequesterId, userId);
+        userStorage.addFriendToUser(declinedRequesterId, userId);
+
+        List<Long> acceptedIds = testRestTemplate.exchange(
+                createFriendRequestsActionUrl(userId, "accept"),
+                HttpMethod.POST,
+                new HttpEntity<>(List.of(acceptedRequesterId, strangerId), applicationJsonHeaders),
+                new ParameterizedTypeReference<List<Long>>() {
+                }
+        ).getBody();
+        List<Long> declinedIds = testRestTemplate.exchange(
+                createFriendRequestsActionUrl(userId, "decline"),
+                HttpMethod.POST,
+                new HttpEntity<>(List.of(declinedRequesterId), applicationJsonHeaders),
+                new ParameterizedTypeReference<List<Long>>() {
+                }
+        ).getBody();
+
+        assertEquals(List.of(acceptedRequesterId), acceptedIds, "Wrong accepted requests");
+        assertEquals(List.of(declinedRequesterId), declinedIds, "Wrong declined requests");
+        assertEquals(1, userStorage.getUserFriends(userId).size(), "Accepted friend not added");
+        assertTrue(userStorage.getUserFriends(declinedRequesterId).isEmpty(), "Declined request not removed");
+    }
+
+    // =============================== POST /users/{id}/friends/mutual-counts ====================================
+    @Test
+    public void shouldReturnMutualFriendsCountsForAllUsers() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long firstFriendId = testDataProducer.addDefaultUserToDB();
+        Long secondFriendId = testDataProducer.addDefaultUserToDB();
+        Long twoMutualId = testDataProducer.addDefaultUserToDB();
+        Long noMutualId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(userId, firstFriendId);
+        userStorage.addFriendToUser(userId, secondFriendId);
+        userStorage.addFriendToUser(twoMutualId, firstFriendId);
+        userStorage.addFriendToUser(twoMutualId, secondFriendId);
+
+        Map<Long, Integer> counts = testRestTemplate.exchange(
+                createGetMutualFriendsCountsUrl(userId),
+                HttpMethod.POST,
+                new HttpEntity<>(List.of(twoMutualId, noMutualId), applicationJsonHeaders),
+                new ParameterizedTypeReference<Map<Long, Integer>>() {
+                }
+        ).getBody();
+
+        assertEquals(2, counts.get(twoMutualId), "Wrong mutual friends count");
+        assertEquals(0, counts.get(noMutualId), "Wrong mutual friends count for user without friends");
+    }
+
+    // =============================== GET /users/common-friends ====================================
+    @Test
+    public void shouldReturnFriendsCommonToAllUsers() {
+        Long firstUserId = testDataProducer.addDefaultUserToDB();
+        Long secondUserId = testDataProducer.addDefaultUserToDB();
+        Long thirdUserId = testDataProducer.addDefaultUserToDB();
+        Long commonFriendId = testDataProducer.addDefaultUserToDB();
+        Long partialFriendId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(firstUserId, commonFriendId);
+        userStorage.addFriendToUser(secondUserId, commonFriendId);
+        userStorage.addFriendToUser(thirdUserId, commonFriendId);
+        userStorage.addFriendToUser(firstUserId, partialFriendId);
+        userStorage.addFriendToUser(secondUserId, partialFriendId);
+
+        List<User> requestedUsers = testRestTemplate.exchange(
+                createGetCommonFriendsOfUsersUrl(firstUserId + "," + secondUserId + "," + thirdUserId),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<User>>() {
+                }
+        ).getBody();
+
+        assertEquals(1, requestedUsers.size(), "Wrong common friends count");
+        assertEquals(commonFriendId, requestedUsers.get(0).getId(), "Wrong common friend");
+    }
+
+    // =============================== POST /users/bulk ====================================
+    @Test
+    public void shouldImportValidUsersAndReportInvalidOnes() {
+        String body = "[" +
+                "{\"login\": \"first\", \"email\": \"first@domen.ru\", \"birthday\": \"2000-01-01\"}," +
+                "{\"login\": \"with space\", \"email\": \"second@domen.ru\", \"birthday\": \"2000-01-01\"}," +
+                "{\"login\": \"third\", \"email\": \"wrong email\", \"birthday\": \"2000-01-01\"}," +
+                "{\"login\": \"fourth\", \"name\": \"Fourth\", \"email\": \"fourth@domen.ru\", " +
+                "\"birthday\": \"2000-01-01\"}" +
+                "]";
+
+        List<BulkImportResult> results = testRestTemplate.exchange(
+                createImportUsersUrl(),
+                HttpMethod.POST,
+                new HttpEntity<>(body, applicationJsonHeaders),
+                new ParameterizedTypeReference<List<BulkImportResult>>() {
+                }
+        ).getBody();
+        Map<Integer, BulkImportResult> resultsByIndex = results.stream()
+                .collect(Collectors.toMap(BulkImportResult::getIndex, Function.identity()));
+
+        assertEquals(4, results.size(), "Wrong results count");
+        assertNotNull(resultsByIndex.get(0).getId(), "Valid user not imported");
+        assertNotNull(resultsByIndex.get(1).getError(), "User with wrong login imported");
+        assertNotNull(resultsByIndex.get(2).getError(), "User with wrong email imported");
+        User imported = userStorage.getUserById(resultsByIndex.get(3).getId()).orElseThrow();
+        assertEquals("Fourth", imported.getName(), "Wrong imported user");
+        assertEquals("first", userStorage.getUserById(resultsByIndex.get(0).getId()).orElseThrow().getName(),
+                "Login not used as empty name");
+    }
+
+    @Test
+    public void shouldContinueImportAfterUnreadableUser() {
+        String body = "[" +
+                "{\"login\": \"first\", \"birthday\": \"not a date\", \"email\": \"first@domen.ru\", " +
+                "\"extra\": {\"nested\": [1, {\"deep\": true}]}}," +
+                "{\"login\": \"second\", \"email\": \"second@domen.ru\", \"birthday\": \"2000-01-01\"}" +
+                "]";
+
+        List<BulkImportResult> results = testRestTemplate.exchange(
+                createImportUsersUrl(),
+                HttpMethod.POST,
+                new HttpEntity<>(body, applicationJsonHeaders),
+                new ParameterizedTypeReference<List<BulkImportResult>>() {
+                }
+        ).getBody();
+        Map<Integer, BulkImportResult> resultsByIndex = results.stream()
+                .collect(Collectors.toMap(BulkImportResult::getIndex, Function.identity()));
+
+        assertEquals(2, results.size(), "Wrong results count");
+        assertNotNull(resultsByIndex.get(0).getError(), "Unreadable user imported");
+        assertEquals("second", userStorage.getUserById(resultsByIndex.get(1).getId()).orElseThrow().getLogin(),
+                "User after unreadable one not imported");
+    }
+
+    // =============================== GET /users/{id}/feed ======================================
+    @Test
+    public void shouldServeRecentFeedPagesFromCache() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long firstFriendId = testDataProducer.addDefaultUserToDB();
+        Long secondFriendId = testDataProducer.addDefaultUserToDB();
+        Long thirdFriendId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(userId, firstFriendId);
+        userStorage.addFriendToUser(userId, secondFriendId);
+        userStorage.addFriendToUser(userId, thirdFriendId);
+        Map<String, Long> statsBefore = feedCache.getStats();
+
+        List<Feed> lastPage = testRestTemplate.exchange(
+                createGetUserFeedUrl(userId, null, 2),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Feed>>() {
+                }
+        ).getBody();
+        List<Feed> previousPage = testRestTemplate.exchange(
+                createGetUserFeedUrl(userId, lastPage.get(0).getEventId(), 2),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Feed>>() {
+                }
+        ).getBody();
+        Map<String, Long> statsAfter = feedCache.getStats();
+
+        assertEquals(List.of(secondFriendId, thirdFriendId),
+                lastPage.stream().map(Feed::getEntityId).collect(Collectors.toList()),
+                "Wrong last page");
+        assertEquals(List.of(firstFriendId),
+                previousPage.stream().map(Feed::getEntityId).collect(Collectors.toList()),
+                "Wrong previous page");
+        assertEquals(statsBefore.get("hits") + 2, statsAfter.get("hits"), "Pages not served from cache");
+        assertEquals(statsBefore.get("misses"), statsAfter.get("misses"), "Feed read from DB");
+    }
+
+    // =============================== GET /users/{id}/feed/stream ======================================
+    @Test
+    public void shouldPushNewFeedEventToStream() throws Exception {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long friendId = testDataProducer.addDefaultUserToDB();
+        int subscribersBefore = feedStreamHub.getSubscribersCount();
+        HttpURLConnection connection = (HttpURLConnection) createGetUserFeedStreamUrl(userId).toURL().openConnection();
+        connection.setReadTimeout(5000);
+        CompletableFuture<String> received = CompletableFuture.supplyAsync(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("data:")) {
+                        return line;
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (feedStreamHub.getSubscribersCount() == subscribersBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        userStorage.addFriendToUser(userId, friendId);
+        String data = received.get(5, TimeUnit.SECONDS);
+        connection.disconnect();
+
+        assertNotNull(data, "Event not pushed");
+        assertTrue(data.contains("\"entityId\":" + friendId), "Wrong event pushed");
+    }
+
+    // =============================== GET /users/{id}/timeline ======================================
+    @Test
+    public void shouldReturnOnlyFriendsEventsInTimeline() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long friendId = testDataProducer.addDefaultUserToDB();
+        Long otherUserId = testDataProducer.addDefaultUserToDB();
+        Long newFriendId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(userId, friendId);
+        userStorage.addFriendToUser(friendId, otherUserId);
+        userStorage.addFriendToUser(otherUserId, userId);
+        feedOutboxFlusher.flush();
+
+        List<Feed> loaded = testRestTemplate.exchange(
+                createGetUserTimelineUrl(userId),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Feed>>() {
+                }
+        ).getBody();
+        userStorage.addFriendToUser(friendId, newFriendId);
+        feedOutboxFlusher.flush();
+        List<Feed> fannedOut = testRestTemplate.exchange(
+                createGetUserTimelineUrl(userId),
+                HttpMethod.GET,
+                null,
+                new ParameterizedTypeReference<List<Feed>>() {
+                }
+        ).getBody();
+
+        assertEquals(1, loaded.size(), "Wrong timeline size");
+        assertEquals(friendId, loaded.get(0).getUserId(), "Not a friend event in timeline");
+        assertEquals(otherUserId, loaded.get(0).getEntityId(), "Wrong event in timeline");
+        assertEquals(2, fannedOut.size(), "New friend event not fanned out");
+        assertEquals(newFriendId, fannedOut.get(1).getEntityId(), "Wrong timeline order");
+    }
+
+    @Test
+    public void shouldRebuildTimelineOfFriendWhenFriendshipChanges() {
+        Long userId = testDataProducer.addDefaultUserToDB();
+        Long friendId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(userId, friendId);
+        userStorage.acceptFriendRequests(friendId, List.of(userId));
+        feedOutboxFlusher.flush();
+
+        List<Feed> mutual = timelineFanout.getTimeline(friendId, 10);
+        //Повторное добавление возвращает запись друга в ожидание подтверждения
+        userStorage.addFriendToUser(userId, friendId);
+        feedOutboxFlusher.flush();
+        List<Feed> oneSided = timelineFanout.getTimeline(friendId, 10);
+
+        assertEquals(1, mutual.size(), "Friend event not in timeline");
+        assertEquals(userId, mutual.get(0).getUserId(), "Wrong event in timeline");
+        assertTrue(oneSided.isEmpty(), "Timeline of former friend is not rebuilt");
+    }
+
+    @Test
+    public void shouldMergeHubEventsIntoTimelinesOnRead() {
+        Long hubId = testDataProducer.addDefaultUserToDB();
+        Long followerId = testDataProducer.addDefaultUserToDB();
+        Long otherFollowerId = testDataProducer.addDefaultUserToDB();
+        Long strangerId = testDataProducer.addDefaultUserToDB();
+        userStorage.addFriendToUser(followerId, hubId);
+        userStorage.addFriendToUser(otherFollowerId, hubId);
+        TimelineFanout fanout = new TimelineFanout(feedStorage, friendGraph, new StageMetrics(), 10, 1, 10);
+        Feed hubEvent = Feed.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(hubId)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .entityId(1L)
+                .eventId(Long.MAX_VALUE)
+                .build();
+
+        fanout.getTimeline(followerId, 10);
+        fanout.onEvents(List.of(hubEvent));
+
+        assertEquals(List.of(hubEvent), fanout.getTimeline(followerId, 10), "Hub event not merged on read");
+        assertEquals(List.of(hubEvent), fanout.getTimeline(otherFollowerId, 10), "Hub event not merged on read");
+        assertTrue(fanout.getTimeline(strangerId, 10).isEmpty(), "Hub event merged into stranger timeline");
+        assertEquals(4, fanout.getStats().get(TimelineFanout.READ_STAGE).getCalls(), "Merge on read not timed");
+    }
+}
@@ -47,7 +47,7 @@ public class FilmReviewTestDataProducer {
             );
         }
 
-        List<FilmReview> filmReviews = filmReviewStorage.getFilmReviews(filmId, reviewsNumber);
+        List<FilmReview> filmReviews = filmReviewStorage.getFilmReviews(filmId, null, null, reviewsNumber);
 
         for (FilmReview filmReview : filmReviews) {
             for (Long usersId : usersIds) {